@@ -43,7 +43,7 @@ public class ConfigFile extends IniEditor {
      *
      * @return The full path to the configuration directory
      */
-    private static String getConfigPath() {
+    static String getConfigPath() {
         /* define the full path of the configuration directory */
         String result = System.getProperty("user.home") + "/" + CONFIG_FOLDERNAME + "/";
         File folder = new File(result);
@@ -19,6 +19,8 @@ package org.gophie2.config;
 
 public class ConfigurationManager {
 
+    private static final String CACHE_FOLDERNAME = "cache";
+
     private static ConfigFile configFile;
 
     /**
@@ -47,4 +49,14 @@ public class ConfigurationManager {
     public static String getDownloadPath() {
         return System.getProperty("user.home") + "/Downloads/";
     }
+
+    /**
+     * Returns the directory where the disk cache is stored which resides in
+     * the configuration directory
+     *
+     * @return Path to the cache directory
+     */
+    public static String getCachePath() {
+        return ConfigFile.getConfigPath() + CACHE_FOLDERNAME + "/";
+    }
 }
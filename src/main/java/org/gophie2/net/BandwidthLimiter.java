@@ -0,0 +1,184 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net;
+
+import java.io.InterruptedIOException;
+
+import org.gophie2.config.ConfigurationManager;
+
+/**
+ * Token bucket limiting the transfer rate of downloads. Tokens for the rate
+ * are added continuously up to a quarter second worth of data, every byte
+ * read takes one token. A limiter may have a parent, the shared limiter of
+ * all downloads, whose tokens are taken as well. Page fetches are never
+ * limited, so browsing stays responsive while files are downloaded.
+ */
+public class BandwidthLimiter {
+
+    /* smallest burst allowed, so slow rates still read whole packets */
+    private static final long MINIMUM_BURST = 16384;
+
+    /* part of a second worth of data the bucket holds */
+    private static final int BURST_DIVISOR = 4;
+
+    private static BandwidthLimiter defaultLimiter;
+
+    private final BandwidthLimiter parent;
+
+    /* bytes per second, 0 means unlimited */
+    private long rate;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * Returns the limiter shared by all downloads
+     *
+     * @return The shared BandwidthLimiter
+     */
+    public static synchronized BandwidthLimiter getDefault() {
+        if (defaultLimiter == null) {
+            defaultLimiter = new BandwidthLimiter(ConfigurationManager.getConfigFile()
+                    .getInt("Network", "DOWNLOAD_RATE_LIMIT", 0) * 1024L, null);
+        }
+        return defaultLimiter;
+    }
+
+    /**
+     * Constructs a limiter
+     *
+     * @param rate Maximum bytes per second, 0 for no limit
+     *
+     * @param parent Limiter whose limit applies as well, may be null
+     */
+    public BandwidthLimiter(long rate, BandwidthLimiter parent) {
+        this.parent = parent;
+        this.lastRefillNanos = System.nanoTime();
+        setRate(rate);
+    }
+
+    /**
+     * Returns the limit of this limiter without its parent
+     *
+     * @return Maximum bytes per second, 0 for no limit
+     */
+    public synchronized long getRate() {
+        return rate;
+    }
+
+    /**
+     * Changes the limit, transfers running already adopt it
+     *
+     * @param rate Maximum bytes per second, 0 for no limit
+     */
+    public synchronized void setRate(long rate) {
+        this.rate = Math.max(0, rate);
+        this.tokens = Math.min(tokens, getBurst());
+    }
+
+    private long getBurst() {
+        return Math.max(MINIMUM_BURST, rate / BURST_DIVISOR);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(getBurst(), tokens + (now - lastRefillNanos) * rate / 1e9);
+        lastRefillNanos = now;
+    }
+
+    /**
+     * Returns the number of bytes that may be read right now
+     *
+     * @param maximum The number of bytes wanted
+     *
+     * @return Between 0 and maximum bytes
+     */
+    public long getAvailable(long maximum) {
+        long available = maximum;
+        synchronized (this) {
+            if (rate > 0) {
+                refill();
+                available = Math.min(maximum, Math.max(0, (long) tokens));
+            }
+        }
+        if (parent != null) {
+            available = parent.getAvailable(available);
+        }
+        return available;
+    }
+
+    /**
+     * Takes the tokens for bytes that were read, the bucket goes into
+     * debt when concurrent transfers read more than was available
+     *
+     * @param count The number of bytes read
+     */
+    public void consume(long count) {
+        synchronized (this) {
+            if (rate > 0) {
+                refill();
+                tokens -= count;
+            }
+        }
+        if (parent != null) {
+            parent.consume(count);
+        }
+    }
+
+    /**
+     * Returns the time until bytes can be read again
+     *
+     * @return The delay in milliseconds, 0 when bytes are available
+     */
+    public long getDelayMillis() {
+        long delay = 0;
+        synchronized (this) {
+            if (rate > 0) {
+                refill();
+                if (tokens < 1) {
+                    delay = (long) Math.ceil((1 - tokens) * 1000 / rate);
+                }
+            }
+        }
+        if (parent != null) {
+            delay = Math.max(delay, parent.getDelayMillis());
+        }
+        return delay;
+    }
+
+    /**
+     * Blocks until bytes can be read and returns how many
+     *
+     * @param maximum The number of bytes wanted
+     *
+     * @return Between 1 and maximum bytes
+     *
+     * @throws InterruptedIOException when interrupted while waiting
+     */
+    public long acquire(long maximum) throws InterruptedIOException {
+        long available;
+        while ((available = getAvailable(maximum)) == 0) {
+            try {
+                Thread.sleep(Math.max(1, getDelayMillis()));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Download was interrupted");
+            }
+        }
+        return available;
+    }
+}
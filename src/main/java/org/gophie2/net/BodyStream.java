@@ -0,0 +1,209 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gophie2.net.event.BodySubscriber;
+import org.gophie2.net.event.BodySubscription;
+
+/**
+ * Subscription of a streamed response body shared by the transports. The
+ * transport reads a chunk whenever there is demand, the chunks and the final
+ * signal are delivered to the subscriber one after the other on the fetch
+ * executor, so a slow subscriber never holds up the transport.
+ */
+class BodyStream implements BodySubscription {
+
+    private final BodySubscriber subscriber;
+    private final TransportRequest<Void> request;
+
+    /* number of chunks the subscriber still wants */
+    private final AtomicLong demand;
+
+    /* signals waiting for delivery and whether a thread delivers them */
+    private final Queue<Runnable> signals;
+    private final AtomicBoolean delivering;
+
+    /* set once the final signal was queued, there is only one */
+    private final AtomicBoolean terminated;
+
+    /* executed when demand arrives after it was used up */
+    private volatile Runnable demandAction;
+
+    BodyStream(BodySubscriber subscriber, TransportRequest<Void> request) {
+        this.subscriber = subscriber;
+        this.request = request;
+        this.demand = new AtomicLong();
+        this.signals = new ConcurrentLinkedQueue<>();
+        this.delivering = new AtomicBoolean(false);
+        this.terminated = new AtomicBoolean(false);
+    }
+
+    /**
+     * Hands the subscription to the subscriber
+     */
+    void start() {
+        signal(() -> subscriber.onSubscribe(this));
+    }
+
+    /**
+     * Sets the action that resumes reading once demand arrives
+     *
+     * @param action The action to execute
+     */
+    void onDemand(Runnable action) {
+        demandAction = action;
+    }
+
+    /**
+     * Returns whether the subscriber wants more chunks
+     *
+     * @return true when there is outstanding demand
+     */
+    boolean hasDemand() {
+        return demand.get() > 0;
+    }
+
+    /**
+     * Blocks until the subscriber wants more chunks or the request is done
+     *
+     * @throws InterruptedException when interrupted while waiting
+     */
+    synchronized void awaitDemand() throws InterruptedException {
+        while (!hasDemand() && !request.isDone()) {
+            wait();
+        }
+    }
+
+    /**
+     * Passes a chunk read from the server on to the subscriber
+     *
+     * @param chunk The chunk, owned by the subscriber from now on
+     *
+     * @return true when more chunks may be read right away
+     */
+    boolean next(ByteBuffer chunk) {
+        long remaining = demand.decrementAndGet();
+        signal(() -> subscriber.onNext(chunk));
+        return remaining > 0;
+    }
+
+    /**
+     * Signals the end of the body to the subscriber, nothing is
+     * signalled when the transfer already ended otherwise
+     */
+    void complete() {
+        if (terminated.compareAndSet(false, true)) {
+            signal(() -> {
+                subscriber.onComplete();
+                request.complete(null);
+            });
+        }
+    }
+
+    /**
+     * Signals a failed transfer to the subscriber, nothing is
+     * signalled when the transfer already ended otherwise
+     *
+     * @param ex The error of the transfer
+     */
+    void error(GopherNetworkException ex) {
+        if (terminated.compareAndSet(false, true)) {
+            signal(() -> {
+                subscriber.onError(ex);
+                request.fail(ex);
+            });
+        }
+    }
+
+    @Override
+    public void request(long count) {
+        if (count <= 0) {
+            /* a protocol violation ends the transfer and
+                aborts the exchange reading the body */
+            GopherNetworkException ex = new GopherNetworkException(Error.EXCEPTION, "Requested " + count + " chunks");
+            error(ex);
+            request.abort(ex);
+            wake();
+            return;
+        }
+
+        /* add the demand without overflowing */
+        long previous = demand.getAndAccumulate(count, (current, added) -> {
+            long result = current + added;
+            return result < 0 ? Long.MAX_VALUE : result;
+        });
+
+        if (previous <= 0) {
+            wake();
+            Runnable action = demandAction;
+            if (action != null) {
+                action.run();
+            }
+        }
+    }
+
+    @Override
+    public void cancel() {
+        request.cancel(true);
+        wake();
+    }
+
+    /**
+     * Wakes up a thread waiting for demand
+     */
+    synchronized void wake() {
+        notifyAll();
+    }
+
+    private void signal(Runnable value) {
+        signals.add(value);
+        if (delivering.compareAndSet(false, true)) {
+            TransportExecutors.getFetchExecutor().execute(this::deliver);
+        }
+    }
+
+    private void deliver() {
+        do {
+            Runnable value;
+            while ((value = signals.poll()) != null) {
+                /* nothing reaches the subscriber once it cancelled */
+                if (request.isCancelled()) {
+                    signals.clear();
+                    break;
+                }
+
+                try {
+                    value.run();
+                } catch (RuntimeException ex) {
+                    /* a broken subscriber ends the transfer */
+                    System.out.println("Body subscriber failed: " + ex.getMessage());
+                    cancel();
+                }
+            }
+            delivering.set(false);
+
+            /* another signal might have arrived after the queue was empty */
+        } while (!signals.isEmpty() && delivering.compareAndSet(false, true));
+    }
+}
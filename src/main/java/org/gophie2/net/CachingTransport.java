@@ -0,0 +1,261 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.gophie2.net.event.BodySubscriber;
+import org.gophie2.net.event.TransportEventListener;
+
+/**
+ * Transport that answers page fetches from a PageCache and only passes them
+ * on to the underlying transport when the page is not cached. When persistent
+ * it also looks pages up in the DiskCache before going to the network.
+ */
+public class CachingTransport implements Transport {
+
+    private final Transport transport;
+    private final PageCache cache;
+    private final boolean persistent;
+
+    /* the request started last, cancelled by cancel() */
+    private volatile TransportRequest<GopherMenu> current;
+
+    /**
+     * Constructs the caching transport
+     *
+     * @param transport The transport to fetch uncached pages with
+     *
+     * @param cache The cache to store pages in
+     */
+    public CachingTransport(Transport transport, PageCache cache) {
+        this(transport, cache, false);
+    }
+
+    /**
+     * Constructs the caching transport
+     *
+     * @param transport The transport to fetch uncached pages with
+     *
+     * @param cache The cache to store pages in
+     *
+     * @param persistent true to also keep pages in the disk cache
+     */
+    public CachingTransport(Transport transport, PageCache cache, boolean persistent) {
+        this.transport = transport;
+        this.cache = cache;
+        this.persistent = persistent;
+    }
+
+    @Override
+    public TransportRequest<Void> downloadAsync(String url, String targetFile, TransportEventListener eventListener, BandwidthLimiter bandwidthLimiter) {
+        /* downloads go to files and are never cached */
+        return transport.downloadAsync(url, targetFile, eventListener, bandwidthLimiter);
+    }
+
+    @Override
+    public TransportRequest<Void> streamAsync(String url, BodySubscriber subscriber) {
+        /* streamed content is consumed on the fly and never cached */
+        return transport.streamAsync(url, subscriber);
+    }
+
+    @Override
+    public TransportRequest<GopherMenu> fetchAsync(String url, GopherMenuItemType contentType, TransportEventListener eventListener) {
+        return fetchAsync(url, contentType, eventListener, false);
+    }
+
+    /**
+     * Fetches a gopher page asynchronously
+     *
+     * @param url the url of the gopher page to fetch
+     *
+     * @param contentType the expected content type of the url
+     *
+     * @param eventListener the listener to report the result to, may be null
+     *
+     * @param reload when true, the cache is bypassed and the page is fetched
+     * from the server, the result still updates the cache
+     *
+     * @return Handle of the fetch to wait for or cancel it
+     */
+    public TransportRequest<GopherMenu> fetchAsync(String url, GopherMenuItemType contentType, TransportEventListener eventListener, boolean reload) {
+        GopherUrl gopherUrl = new GopherUrl(url);
+        if (!reload) {
+            GopherMenu cached = cache.get(gopherUrl, contentType);
+            if (cached != null) {
+                return TransportRequest.completed(cached).reportTo(eventListener, gopherUrl);
+            }
+        }
+
+        TransportRequest<GopherMenu> request = new TransportRequest<>();
+        request.reportTo(eventListener, gopherUrl);
+        current = request;
+
+        if (!reload && persistent) {
+            /* the disk cache does file i/o, never do that on the caller and
+                never interrupt it, that would close the cache files */
+            Future<?> lookup = TransportExecutors.getFetchExecutor().submit(() -> {
+                GopherMenu stored = loadFromDisk(gopherUrl, contentType);
+                if (stored != null) {
+                    request.complete(stored);
+                } else if (!request.isCancelled()) {
+                    fetchFromServer(url, gopherUrl, contentType, eventListener, request);
+                }
+            });
+            request.onAbort(() -> lookup.cancel(false));
+        } else {
+            fetchFromServer(url, gopherUrl, contentType, eventListener, request);
+        }
+        return request;
+    }
+
+    /**
+     * Fetches the page with the underlying transport and stores it in the
+     * cache before completing the request
+     */
+    private void fetchFromServer(String url, GopherUrl gopherUrl, GopherMenuItemType contentType, TransportEventListener eventListener, TransportRequest<GopherMenu> request) {
+        TransportRequest<GopherMenu> fetch = transport.fetchAsync(url, contentType, new ProgressForwarder(eventListener));
+        request.onAbort(() -> fetch.cancel(true));
+        fetch.whenComplete((result, error) -> {
+            if (error == null) {
+                store(gopherUrl, contentType, result);
+                request.complete(result);
+            } else {
+                request.completeExceptionally(error);
+            }
+        });
+    }
+
+    @Override
+    public GopherMenu fetch(String url, GopherMenuItemType contentType, TransportEventListener eventListener) throws GopherNetworkException {
+        GopherUrl gopherUrl = new GopherUrl(url);
+        GopherMenu result = cache.get(gopherUrl, contentType);
+        if (result == null && persistent) {
+            result = loadFromDisk(gopherUrl, contentType);
+        }
+        if (result == null) {
+            result = transport.fetch(url, contentType, eventListener);
+            store(gopherUrl, contentType, result);
+        }
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        TransportRequest<GopherMenu> request = current;
+        if (request != null) {
+            request.cancel(true);
+        }
+    }
+
+    /**
+     * Looks the page up in the disk cache and moves it to the memory cache
+     *
+     * @param url The url of the page
+     *
+     * @param contentType The content type requested for the page
+     *
+     * @return The page or null when not stored on disk
+     */
+    private GopherMenu loadFromDisk(GopherUrl url, GopherMenuItemType contentType) {
+        DiskCache diskCache = DiskCache.getDefault();
+        if (diskCache == null) {
+            return null;
+        }
+
+        byte[] content = diskCache.get(PageCache.createKey(url, contentType));
+        if (content == null) {
+            return null;
+        }
+
+        GopherMenu result = new GopherMenu(content, contentType, url);
+        cache.put(url, contentType, result);
+        return result;
+    }
+
+    /**
+     * Stores a fetched page in the memory cache and in the disk cache
+     *
+     * @param url The url the page was requested with
+     *
+     * @param contentType The content type the page was requested with
+     *
+     * @param page The page to store
+     */
+    private void store(GopherUrl url, GopherMenuItemType contentType, GopherMenu page) {
+        cache.put(url, contentType, page);
+        if (persistent) {
+            DiskCache diskCache = DiskCache.getDefault();
+            if (diskCache != null) {
+                diskCache.put(PageCache.createKey(url, contentType), page.getByteArray());
+            }
+        }
+    }
+
+    /**
+     * Listener that passes progress and received items on to the original
+     * listener, the result is reported through the request
+     */
+    private static class ProgressForwarder implements TransportEventListener {
+
+        private final TransportEventListener eventListener;
+
+        ProgressForwarder(TransportEventListener eventListener) {
+            this.eventListener = eventListener;
+        }
+
+        @Override
+        public void progress(GopherUrl progressUrl, long byteCount) {
+            if (eventListener != null) {
+                eventListener.progress(progressUrl, byteCount);
+            }
+        }
+
+        @Override
+        public void itemsReceived(GopherUrl itemsUrl, List<GopherMenuItem> itemList) {
+            if (eventListener != null) {
+                eventListener.itemsReceived(itemsUrl, itemList);
+            }
+        }
+
+        @Override
+        public void textReceived(GopherUrl textUrl, String text) {
+            if (eventListener != null) {
+                eventListener.textReceived(textUrl, text);
+            }
+        }
+
+        @Override
+        public void imageDataReceived(GopherUrl imageUrl, byte[] data) {
+            if (eventListener != null) {
+                eventListener.imageDataReceived(imageUrl, data);
+            }
+        }
+
+        @Override
+        public void loaded(GopherMenu result) {
+            /* reported by the request */
+        }
+
+        @Override
+        public void failed(Error error, GopherUrl failedUrl) {
+            /* reported by the request */
+        }
+    }
+}
@@ -0,0 +1,502 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.gophie2.config.ConfigFile;
+import org.gophie2.config.ConfigurationManager;
+
+/**
+ * Persistent cache for fetched content. Responses are appended to segment
+ * files and located through a hash index in a memory mapped file. The oldest
+ * segments are deleted when the cache exceeds its size. All file access is
+ * guarded by a lock file, so several Gophie processes can share the cache.
+ *
+ * Every record carries a checksum and is validated on read, a damaged index
+ * slot or a torn record is simply treated as a miss. A broken index is
+ * rebuilt from the segments when the cache is opened.
+ */
+public class DiskCache {
+
+    /* default cache size in megabytes and time to live in seconds */
+    private static final int DEFAULT_CACHE_SIZE = 256;
+    private static final int DEFAULT_CACHE_TTL = 86400;
+
+    /* file names inside the cache directory */
+    private static final String INDEX_FILENAME = "index.map";
+    private static final String LOCK_FILENAME = "cache.lock";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    /* layout of the index file */
+    private static final int INDEX_MAGIC = 0x47504958;
+    private static final int INDEX_VERSION = 1;
+    private static final int INDEX_HEADER_SIZE = 16;
+    private static final int SLOT_COUNT = 16384;
+    private static final int SLOT_SIZE = 32;
+    private static final int MAX_PROBES = 16;
+
+    /* layout of a slot: hash, segment, offset, length, check, time */
+    private static final int SLOT_HASH = 0;
+    private static final int SLOT_SEGMENT = 8;
+    private static final int SLOT_OFFSET = 12;
+    private static final int SLOT_LENGTH = 16;
+    private static final int SLOT_CHECK = 20;
+    private static final int SLOT_TIME = 24;
+
+    /* layout of a record: magic, key length, data length, crc, time */
+    private static final int RECORD_MAGIC = 0x47505243;
+    private static final int RECORD_HEADER_SIZE = 24;
+
+    /* smallest size of a segment file */
+    private static final long MINIMUM_SEGMENT_SIZE = 1024 * 1024;
+
+    private static DiskCache defaultCache;
+    private static boolean defaultCacheOpened = false;
+
+    private final File directory;
+    private final long maximumSize;
+    private final long segmentSize;
+    private final long timeToLiveMillis;
+    private final FileChannel lockChannel;
+    private final MappedByteBuffer index;
+
+    /**
+     * Returns the disk cache in the configuration directory
+     *
+     * @return The disk cache or null when disabled or not available
+     */
+    public static synchronized DiskCache getDefault() {
+        if (!defaultCacheOpened) {
+            defaultCacheOpened = true;
+
+            ConfigFile configFile = ConfigurationManager.getConfigFile();
+            long size = (long) configFile.getInt("Network", "DISK_CACHE_SIZE", DEFAULT_CACHE_SIZE) * 1024 * 1024;
+            long timeToLive = configFile.getInt("Network", "DISK_CACHE_TTL", DEFAULT_CACHE_TTL) * 1000L;
+            if (size > 0) {
+                try {
+                    defaultCache = new DiskCache(new File(ConfigurationManager.getCachePath()), size, timeToLive);
+                } catch (IOException ex) {
+                    /* gophie works fine without the disk cache */
+                    System.out.println("Failed to open disk cache: " + ex.getMessage());
+                }
+            }
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Opens the cache in the directory and recovers it when required
+     *
+     * @param directory The directory to store the cache in
+     *
+     * @param maximumSize Maximum size of all segments in bytes
+     *
+     * @param timeToLiveMillis Time in milliseconds a record stays valid
+     *
+     * @throws IOException when the cache files cannot be opened
+     */
+    public DiskCache(File directory, long maximumSize, long timeToLiveMillis) throws IOException {
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+        /* offsets and lengths of records are stored as int in the index */
+        this.segmentSize = Math.min(Integer.MAX_VALUE, Math.max(MINIMUM_SEGMENT_SIZE, maximumSize / 16));
+        this.timeToLiveMillis = timeToLiveMillis;
+
+        directory.mkdirs();
+        lockChannel = FileChannel.open(new File(directory, LOCK_FILENAME).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try (FileChannel indexChannel = FileChannel.open(new File(directory, INDEX_FILENAME).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE + (long) SLOT_COUNT * SLOT_SIZE);
+        }
+
+        FileLock lock = lockChannel.lock();
+        try {
+            recover();
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Returns the cached content for the key
+     *
+     * @param key The key the content was stored with
+     *
+     * @return The content or null when not cached or expired
+     */
+    public synchronized byte[] get(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(keyBytes);
+
+        try {
+            FileLock lock = lockChannel.lock(0, Long.MAX_VALUE, true);
+            try {
+                int start = slotIndex(hash);
+                for (int probe = 0; probe < MAX_PROBES; probe++) {
+                    int slot = (start + probe) % SLOT_COUNT;
+                    if (!isSlotValid(slot) || index.getLong(slotPosition(slot) + SLOT_HASH) != hash) {
+                        continue;
+                    }
+
+                    int position = slotPosition(slot);
+                    if (index.getLong(position + SLOT_TIME) + timeToLiveMillis < System.currentTimeMillis()) {
+                        return null;
+                    }
+
+                    byte[] result = readRecord(index.getInt(position + SLOT_SEGMENT),
+                            index.getInt(position + SLOT_OFFSET), index.getInt(position + SLOT_LENGTH), keyBytes);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException ex) {
+            System.out.println("Failed to read from disk cache: " + ex.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Stores content in the cache
+     *
+     * @param key The key to store the content with
+     *
+     * @param data The content to store
+     */
+    public synchronized void put(String key, byte[] data) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int recordLength = RECORD_HEADER_SIZE + keyBytes.length + data.length;
+        if (recordLength > segmentSize) {
+            /* too large to be cached at all */
+            return;
+        }
+
+        try {
+            FileLock lock = lockChannel.lock();
+            try {
+                /* append to the newest segment or start a new one */
+                List<Integer> segments = listSegments();
+                int segment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1);
+                File segmentFile = getSegmentFile(segment);
+                if (segmentFile.length() + recordLength > segmentSize) {
+                    segment++;
+                    segmentFile = getSegmentFile(segment);
+                }
+
+                long time = System.currentTimeMillis();
+                long offset;
+                try (RandomAccessFile file = new RandomAccessFile(segmentFile, "rw")) {
+                    offset = file.length();
+                    file.seek(offset);
+                    file.write(createRecord(keyBytes, data, time));
+                }
+
+                /* the record is complete, now make it visible in the index */
+                writeSlot(findSlot(hash(keyBytes)), hash(keyBytes), segment, (int) offset, recordLength, time);
+                evict();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException ex) {
+            System.out.println("Failed to write to disk cache: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Validates the index and the newest segment after an unclean shutdown,
+     * must be called while holding the exclusive lock
+     *
+     * @throws IOException when the segments cannot be read
+     */
+    private void recover() throws IOException {
+        List<Integer> segments = listSegments();
+
+        /* cut off a record that was not written completely */
+        if (!segments.isEmpty()) {
+            int newest = segments.get(segments.size() - 1);
+            try (RandomAccessFile file = new RandomAccessFile(getSegmentFile(newest), "rw")) {
+                long validLength = scanSegment(newest, file, false);
+                if (validLength < file.length()) {
+                    System.out.println("Disk cache: truncating damaged segment " + newest);
+                    file.setLength(validLength);
+                }
+            }
+        }
+
+        if (index.getInt(0) != INDEX_MAGIC || index.getInt(4) != INDEX_VERSION || index.getInt(8) != SLOT_COUNT) {
+            /* index is new or broken, rebuild it from the segments */
+            for (int i = 0; i < INDEX_HEADER_SIZE + SLOT_COUNT * SLOT_SIZE; i += 8) {
+                index.putLong(i, 0);
+            }
+            for (int segment : segments) {
+                try (RandomAccessFile file = new RandomAccessFile(getSegmentFile(segment), "r")) {
+                    scanSegment(segment, file, true);
+                }
+            }
+            index.putInt(4, INDEX_VERSION);
+            index.putInt(8, SLOT_COUNT);
+            index.putInt(0, INDEX_MAGIC);
+            index.force();
+        }
+    }
+
+    /**
+     * Reads all records of a segment and optionally adds them to the index
+     *
+     * @param segment The number of the segment
+     *
+     * @param file The opened segment file
+     *
+     * @param addToIndex true to add every valid record to the index
+     *
+     * @return The length of the segment up to the first invalid record
+     *
+     * @throws IOException when the segment cannot be read
+     */
+    private long scanSegment(int segment, RandomAccessFile file, boolean addToIndex) throws IOException {
+        long length = file.length();
+        long offset = 0;
+        byte[] header = new byte[RECORD_HEADER_SIZE];
+
+        while (offset + RECORD_HEADER_SIZE <= length) {
+            file.seek(offset);
+            file.readFully(header);
+            ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+            int keyLength = headerBuffer.getInt(4);
+            int dataLength = headerBuffer.getInt(8);
+            long recordLength = (long) RECORD_HEADER_SIZE + keyLength + dataLength;
+            if (headerBuffer.getInt(0) != RECORD_MAGIC || keyLength < 0 || dataLength < 0
+                    || offset + recordLength > Math.min(length, Integer.MAX_VALUE)) {
+                break;
+            }
+
+            byte[] body = new byte[keyLength + dataLength];
+            file.readFully(body);
+            if (checksum(body) != headerBuffer.getInt(12)) {
+                break;
+            }
+
+            if (addToIndex) {
+                long hash = hash(Arrays.copyOf(body, keyLength));
+                writeSlot(findSlot(hash), hash, segment, (int) offset, (int) recordLength, headerBuffer.getLong(16));
+            }
+            offset += recordLength;
+        }
+
+        return offset;
+    }
+
+    private byte[] readRecord(int segment, int offset, int length, byte[] keyBytes) throws IOException {
+        File segmentFile = getSegmentFile(segment);
+        if (length < RECORD_HEADER_SIZE + keyBytes.length || offset + (long) length > segmentFile.length()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.READ)) {
+            /* validate the header and the key before reading the data */
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE + keyBytes.length);
+            readFully(channel, header, offset);
+            int keyLength = header.getInt(4);
+            int dataLength = header.getInt(8);
+            if (header.getInt(0) != RECORD_MAGIC || keyLength != keyBytes.length
+                    || RECORD_HEADER_SIZE + keyLength + dataLength != length) {
+                return null;
+            }
+            header.position(RECORD_HEADER_SIZE);
+            if (!header.equals(ByteBuffer.wrap(keyBytes))) {
+                return null;
+            }
+
+            /* the data is read straight into the array returned */
+            byte[] data = new byte[dataLength];
+            readFully(channel, ByteBuffer.wrap(data), offset + RECORD_HEADER_SIZE + keyLength);
+            CRC32 crc = new CRC32();
+            crc.update(keyBytes);
+            crc.update(data);
+            if ((int) crc.getValue() != header.getInt(12)) {
+                return null;
+            }
+            return data;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+        }
+        buffer.flip();
+    }
+
+    private byte[] createRecord(byte[] keyBytes, byte[] data, long time) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + keyBytes.length + data.length);
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        crc.update(data);
+
+        record.putInt(RECORD_MAGIC);
+        record.putInt(keyBytes.length);
+        record.putInt(data.length);
+        record.putInt((int) crc.getValue());
+        record.putLong(time);
+        record.put(keyBytes);
+        record.put(data);
+        return record.array();
+    }
+
+    /**
+     * Deletes the oldest segments while the cache is too large, must be
+     * called while holding the exclusive lock
+     */
+    private void evict() {
+        List<Integer> segments = listSegments();
+        long totalSize = 0;
+        for (int segment : segments) {
+            totalSize += getSegmentFile(segment).length();
+        }
+
+        while (totalSize > maximumSize && segments.size() > 1) {
+            int oldest = segments.remove(0);
+            File segmentFile = getSegmentFile(oldest);
+            totalSize -= segmentFile.length();
+
+            /* remove the index entries before the data */
+            for (int slot = 0; slot < SLOT_COUNT; slot++) {
+                if (index.getInt(slotPosition(slot) + SLOT_SEGMENT) == oldest) {
+                    index.putLong(slotPosition(slot) + SLOT_HASH, 0);
+                }
+            }
+            segmentFile.delete();
+        }
+    }
+
+    /**
+     * Finds the slot to store a hash in, which is the slot that already
+     * holds the hash, a free slot or the oldest slot within the probe range
+     */
+    private int findSlot(long hash) {
+        int start = slotIndex(hash);
+        int oldestSlot = start;
+        long oldestTime = Long.MAX_VALUE;
+
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = (start + probe) % SLOT_COUNT;
+            int position = slotPosition(slot);
+            if (!isSlotValid(slot) || index.getLong(position + SLOT_HASH) == hash) {
+                return slot;
+            }
+            if (index.getLong(position + SLOT_TIME) < oldestTime) {
+                oldestTime = index.getLong(position + SLOT_TIME);
+                oldestSlot = slot;
+            }
+        }
+
+        return oldestSlot;
+    }
+
+    private void writeSlot(int slot, long hash, int segment, int offset, int length, long time) {
+        int position = slotPosition(slot);
+        index.putLong(position + SLOT_HASH, 0);
+        index.putInt(position + SLOT_SEGMENT, segment);
+        index.putInt(position + SLOT_OFFSET, offset);
+        index.putInt(position + SLOT_LENGTH, length);
+        index.putLong(position + SLOT_TIME, time);
+        index.putInt(position + SLOT_CHECK, slotCheck(hash, segment, offset, length, time));
+        index.putLong(position + SLOT_HASH, hash);
+    }
+
+    private boolean isSlotValid(int slot) {
+        int position = slotPosition(slot);
+        long hash = index.getLong(position + SLOT_HASH);
+        return hash != 0 && index.getInt(position + SLOT_CHECK) == slotCheck(hash,
+                index.getInt(position + SLOT_SEGMENT), index.getInt(position + SLOT_OFFSET),
+                index.getInt(position + SLOT_LENGTH), index.getLong(position + SLOT_TIME));
+    }
+
+    private static int slotCheck(long hash, int segment, int offset, int length, long time) {
+        long value = hash ^ (segment * 31L) ^ (offset * 961L) ^ (length * 29791L) ^ time;
+        return (int) (value ^ (value >>> 32));
+    }
+
+    private static int slotPosition(int slot) {
+        return INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static int slotIndex(long hash) {
+        return (int) ((hash ^ (hash >>> 32)) & (SLOT_COUNT - 1));
+    }
+
+    private static long hash(byte[] keyBytes) {
+        /* 64 bit FNV-1a, zero marks empty slots */
+        long result = 0xcbf29ce484222325L;
+        for (byte value : keyBytes) {
+            result ^= (value & 0xff);
+            result *= 0x100000001b3L;
+        }
+        return result == 0 ? 1 : result;
+    }
+
+    private static int checksum(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private File getSegmentFile(int segment) {
+        return new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private List<Integer> listSegments() {
+        List<Integer> result = new ArrayList<>();
+        String[] fileList = directory.list();
+        if (fileList != null) {
+            for (String fileName : fileList) {
+                if (fileName.startsWith(SEGMENT_PREFIX) && fileName.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        result.add(Integer.parseInt(fileName.substring(SEGMENT_PREFIX.length(),
+                                fileName.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException ex) {
+                        /* not one of our segments */
+                    }
+                }
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+}
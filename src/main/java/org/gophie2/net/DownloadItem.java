@@ -21,9 +21,13 @@ import java.util.ArrayList;
 import java.util.List;
 import org.gophie2.net.event.DownloadItemEventListener;
 import org.gophie2.ui.DesktopUtils;
+import org.gophie2.ui.event.EdtEventDispatcher;
 
 public class DownloadItem {
 
+    /* priorities of the queue, higher ones start first */
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_HIGH = 1;
 
     /* local objects and variables */
     private GopherMenuItem item;
@@ -34,8 +38,22 @@ public class DownloadItem {
     private final List<DownloadItemEventListener> eventListenerList;
     private final DownloadItemListener downloadItemListener;
 
+    /* passes the events of the running download to the ui */
+    private EdtEventDispatcher dispatcher;
+
+    /* handle of the running download */
+    private TransportRequest<Void> request;
+
+    /* limits the transfer rate of this download below the shared limit */
+    private final BandwidthLimiter bandwidthLimiter;
+
+    /* position in the queue of the download list */
+    private int priority = PRIORITY_NORMAL;
+    private long queueSequence;
+
     /**
-     * Constructor creates the download and starts it immediately
+     * Constructor creates the download, it is started by the download
+     * list once a slot is free
      *
      * @param gopherItem The gopher item to download
      *
@@ -45,12 +63,12 @@ public class DownloadItem {
      */
     public DownloadItem(GopherMenuItem gopherItem, String targetFile, Boolean openWhenFinished) {
         eventListenerList = new ArrayList<>();
-        client = new GopherTransport();
+        client = TransportFactory.create();
         status = DownloadStatus.IDLE;
         item = gopherItem;
         fileName = targetFile;
         downloadItemListener = new DownloadItemListener(this, openWhenFinished);
-        start();
+        bandwidthLimiter = new BandwidthLimiter(0, BandwidthLimiter.getDefault());
     }
 
     public void addEventListener(DownloadItemEventListener listener) {
@@ -64,11 +82,15 @@ public class DownloadItem {
     }
 
     /**
-     * Starts the download of the file
+     * Starts the download of the file, called by the download list
      */
-    public final void start() {
+    void start() {
+        /* a retry measures its rate from its own start */
+        downloadItemListener.reset();
+
         /* start the download process */
-        client.downloadAsync(item.getUrlString(), fileName, new DownloadItemListener(this));
+        dispatcher = new EdtEventDispatcher(downloadItemListener);
+        request = client.downloadAsync(item.getUrlString(), fileName, dispatcher, bandwidthLimiter);
         status = DownloadStatus.ACTIVE;
     }
 
@@ -84,7 +106,12 @@ public class DownloadItem {
      *
      */
     public void cancel() {
-        client.cancel();
+        if (request != null) {
+            request.cancel(true);
+        }
+        if (dispatcher != null) {
+            dispatcher.cancel();
+        }
     }
 
     /**
@@ -127,6 +154,46 @@ public class DownloadItem {
         this.status = status;
     }
 
+    /**
+     * Returns the priority in the queue
+     *
+     * @return The priority, PRIORITY_HIGH starts first
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Returns the limit of the transfer rate of this download
+     *
+     * @return Maximum bytes per second, 0 when only the shared limit applies
+     */
+    public long getRateLimit() {
+        return bandwidthLimiter.getRate();
+    }
+
+    /**
+     * Limits the transfer rate of this download, a running
+     * download adopts the limit right away
+     *
+     * @param bytesPerSecond Maximum bytes per second, 0 for no own limit
+     */
+    public void setRateLimit(long bytesPerSecond) {
+        bandwidthLimiter.setRate(bytesPerSecond);
+    }
+
+    long getQueueSequence() {
+        return queueSequence;
+    }
+
+    void setQueueSequence(long queueSequence) {
+        this.queueSequence = queueSequence;
+    }
+
     public long getByteCountLoaded() {
         return downloadItemListener.getByteCountLoaded();
     }
@@ -46,6 +46,16 @@ public class DownloadItemListener implements TransportEventListener {
         byteCountLoaded = 0;
     }
 
+    /**
+     * Forgets the progress of an earlier attempt, called
+     * before the download is started again
+     */
+    public void reset() {
+        startTimeMillis = 0;
+        bytePerSecond = 0;
+        byteCountLoaded = 0;
+    }
+
     /**
      * Returns the number of bytes loaded
      *
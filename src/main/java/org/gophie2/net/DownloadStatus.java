@@ -17,10 +17,12 @@
 package org.gophie2.net;
 
 /**
+ * Status of a download, IDLE downloads wait in the queue for a free
+ * slot and PAUSED downloads are held back until they are resumed
  *
  * @author malyshev
  */
 public enum DownloadStatus {
-    IDLE, FAILED, ACTIVE, COMPLETED
+    IDLE, PAUSED, FAILED, ACTIVE, COMPLETED
 
 }
@@ -18,21 +18,51 @@
 package org.gophie2.net;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
 
+import org.gophie2.config.ConfigurationManager;
 import org.gophie2.net.event.DownloadItemEventListener;
 import org.gophie2.net.event.DownloadsEventListener;
 
+/**
+ * The list of downloads and their scheduler. Only a limited number of
+ * downloads are active at once, the others wait in a queue ordered by
+ * their priority and then by the time they were queued, and start
+ * whenever an active download ends. Used from the event dispatch thread.
+ */
 public class Downloads extends ArrayList<DownloadItem> implements DownloadItemEventListener {
 
     private static final long serialVersionUID = 9087143027422522375L;
     public static final Downloads INSTANCE = new Downloads();
 
+    /* default number of downloads running at once */
+    private static final int DEFAULT_ACTIVE_DOWNLOADS = 3;
+
     /* event listeners for list updated */
     private final List<DownloadsEventListener> eventListener;
 
+    /* downloads waiting for a slot and the running ones */
+    private final PriorityQueue<DownloadItem> queue;
+    private final Set<DownloadItem> active;
+    private final int maximumActive;
+    private long queueSequence;
+
     private Downloads() {
+        this(ConfigurationManager.getConfigFile().getInt("Network", "ACTIVE_DOWNLOADS", DEFAULT_ACTIVE_DOWNLOADS));
+    }
+
+    private Downloads(int maximumActive) {
         this.eventListener = new ArrayList<>();
+        this.queue = new PriorityQueue<>(Comparator
+                .comparingInt(DownloadItem::getPriority).reversed()
+                .thenComparingLong(DownloadItem::getQueueSequence));
+        this.active = new HashSet<>();
+        this.maximumActive = Math.max(1, maximumActive);
+        this.queueSequence = 0;
     }
 
     /**
@@ -51,29 +81,29 @@ public class Downloads extends ArrayList<DownloadItem> implements DownloadItemEv
         return result;
     }
 
-    public Boolean hasNonActiveItems() {
-        Boolean result = false;
-
-        for (DownloadItem item : this) {
-            if (item.getStatus() != DownloadStatus.ACTIVE) {
-                result = true;
-            }
-        }
-
-        return result;
+    /**
+     * Returns whether any download has completed or failed
+     *
+     * @return true when there are items to clear
+     */
+    public Boolean hasFinishedItems() {
+        return this.stream().anyMatch(Downloads::isFinished);
     }
 
-    public void clearNonActiveItems() {
-        ArrayList<DownloadItem> currentList = this;
-        this.clear();
-
-        currentList.stream().filter((item) -> (item.getStatus() == DownloadStatus.ACTIVE)).forEachOrdered((item) -> {
-            this.add(item);
-        });
-
+    /**
+     * Removes the completed and failed downloads from
+     * the list, running and queued ones are kept
+     */
+    public void clearFinishedItems() {
+        super.removeIf(Downloads::isFinished);
         this.notifyUpdate();
     }
 
+    private static boolean isFinished(DownloadItem item) {
+        return item.getStatus() == DownloadStatus.COMPLETED
+                || item.getStatus() == DownloadStatus.FAILED;
+    }
+
     public void addEventListener(DownloadsEventListener listener) {
         this.eventListener.add(listener);
     }
@@ -84,22 +114,126 @@ public class Downloads extends ArrayList<DownloadItem> implements DownloadItemEv
         });
     }
 
+    /**
+     * Adds the download to the list and queues it,
+     * it starts as soon as a slot is free
+     *
+     * @param e The download to add
+     *
+     * @return Always true
+     */
     @Override
     public boolean add(DownloadItem e) {
         boolean result = super.add(e);
         e.addEventListener(this);
+        enqueue(e);
         this.notifyUpdate();
         return result;
     }
 
+    /**
+     * Cancels the download when it is running or queued
+     * and removes it from the list
+     *
+     * @param item The download to remove
+     *
+     * @return true when the download was in the list
+     */
+    @Override
+    public boolean remove(Object item) {
+        boolean result = super.remove(item);
+        if (item instanceof DownloadItem) {
+            DownloadItem download = (DownloadItem) item;
+            queue.remove(download);
+            if (active.remove(download)) {
+                download.cancel();
+            }
+            schedule();
+        }
+        this.notifyUpdate();
+        return result;
+    }
+
+    /**
+     * Holds a queued download back until it is resumed
+     *
+     * @param item The queued download
+     */
+    public void pause(DownloadItem item) {
+        if (item.getStatus() == DownloadStatus.IDLE && queue.remove(item)) {
+            item.setStatus(DownloadStatus.PAUSED);
+            this.notifyUpdate();
+        }
+    }
+
+    /**
+     * Queues a paused or failed download again
+     *
+     * @param item The download to resume
+     */
+    public void resume(DownloadItem item) {
+        if (item.getStatus() == DownloadStatus.PAUSED
+                || item.getStatus() == DownloadStatus.FAILED) {
+            enqueue(item);
+            this.notifyUpdate();
+        }
+    }
+
+    /**
+     * Changes the priority of a download, queued
+     * downloads are moved to their new position
+     *
+     * @param item The download
+     *
+     * @param priority The priority, DownloadItem.PRIORITY_HIGH starts first
+     */
+    public void setPriority(DownloadItem item, int priority) {
+        boolean queued = queue.remove(item);
+        item.setPriority(priority);
+        if (queued) {
+            queue.add(item);
+            schedule();
+        }
+        this.notifyUpdate();
+    }
+
+    private void enqueue(DownloadItem item) {
+        item.setStatus(DownloadStatus.IDLE);
+        item.setQueueSequence(queueSequence++);
+        queue.add(item);
+        schedule();
+    }
+
+    /**
+     * Frees the slots of downloads that ended and
+     * starts queued downloads in the free slots
+     */
+    private void schedule() {
+        active.removeIf((item) -> (item.getStatus() != DownloadStatus.ACTIVE));
+
+        while (active.size() < maximumActive && !queue.isEmpty()) {
+            DownloadItem item = queue.poll();
+            active.add(item);
+            item.start();
+        }
+    }
+
     @Override
     public void clear() {
+        queue.clear();
+        active.forEach(DownloadItem::cancel);
+        active.clear();
         super.clear();
         this.notifyUpdate();
     }
 
     @Override
     public void progressReported() {
+        /* a download that just ended frees its slot */
+        if (active.stream().anyMatch((item) -> (item.getStatus() != DownloadStatus.ACTIVE))) {
+            schedule();
+        }
+
         this.eventListener.forEach((listener) -> {
             listener.progressReported();
         });
@@ -35,6 +35,9 @@ public class GopherMenu {
     /* defines the default charset */
     private static final String GOPHERPAGE_DEFAULT_CHARSET = "UTF-8";
 
+    /* estimated memory used per menu item in the columns of the menu */
+    private static final int BYTES_PER_ITEM = 40;
+
     /* local variables */
     private byte[] sourceCode;
     private GopherUrl url;
@@ -79,6 +82,40 @@ public class GopherMenu {
         }
     }
 
+    /**
+     * Constructs the GopherPage object from a gophermap that was already
+     * parsed while it was received. If the parser failed, the content is
+     * considered to be text.
+     *
+     * @param gopherPageSourceCode Source code of the gopher page
+     *
+     * @param gopherPageUrl The URL of the gopher page
+     *
+     * @param parser The parser that was fed with the source code
+     */
+    public GopherMenu(byte[] gopherPageSourceCode, GopherUrl gopherPageUrl, GopherMenuParser parser) {
+        this.sourceCode = gopherPageSourceCode;
+        this.url = gopherPageUrl;
+
+        if (parser.hasFailed()) {
+            /* parsing failed for whatever, define as text */
+            this.itemList = new ArrayList<>();
+            this.contentType = GopherMenuItemType.TEXTFILE;
+        } else {
+            this.itemList = parser.getItemList();
+            this.contentType = GopherMenuItemType.GOPHERMENU;
+        }
+    }
+
+    /**
+     * Returns the charset configured to decode gopher pages
+     *
+     * @return Name of the charset
+     */
+    public static String getCharset() {
+        return ConfigurationManager.getConfigFile().get("Network", "DEFAULT_CHARSET", GOPHERPAGE_DEFAULT_CHARSET);
+    }
+
     /**
      * Returns the content type of this page
      *
@@ -107,6 +144,15 @@ public class GopherMenu {
         return this.sourceCode;
     }
 
+    /**
+     * Returns the estimated memory used by the parsed page
+     *
+     * @return The size in bytes
+     */
+    public long getMemorySize() {
+        return this.sourceCode.length + (long) this.itemList.size() * BYTES_PER_ITEM;
+    }
+
     /**
      * Sets the source code (gophermap) of this gopher page
      *
@@ -123,8 +169,7 @@ public class GopherMenu {
      */
     public String getSourceCode() {
         try {
-            String charset = ConfigurationManager.getConfigFile().get("Network", "DEFAULT_CHARSET", GOPHERPAGE_DEFAULT_CHARSET);
-            return new String(this.sourceCode, charset);
+            return new String(this.sourceCode, getCharset());
         } catch (UnsupportedEncodingException ex) {
             /* drop a quick info on the console when decoding fails */
             System.out.println("Failed to decode bytes of Gopher Page: " + ex.getMessage());
@@ -224,12 +269,12 @@ public class GopherMenu {
     /**
      * parses the local source code into components
      */
-    private void parse() {
-        String[] itemSourceList = this.getSourceCode().split("\n");
-        for (String itemSource : itemSourceList) {
-            if (itemSource.length() > 0 && itemSource.equals(".") == false) {
-                this.itemList.add(new GopherMenuItem(itemSource));
-            }
+    private void parse() throws Exception {
+        GopherMenuParser parser = new GopherMenuParser(getCharset(), this.sourceCode);
+
+        if (parser.hasFailed()) {
+            throw new Exception("Content is not a valid gophermap");
         }
+        this.itemList = parser.getItemList();
     }
 }
@@ -0,0 +1,180 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.gophie2.net.event.TransportEventListener;
+
+/**
+ * Collects the response of a page fetch and, for gophermaps, parses the
+ * items while the bytes are still arriving. Text content is decoded while
+ * it arrives instead and the bytes of images are passed on as they arrive.
+ */
+final class GopherMenuBuilder {
+
+    private final GopherUrl url;
+    private final GopherMenuItemType contentType;
+    private final TransportEventListener eventListener;
+    /* parser for gophermaps which also keeps the raw bytes,
+        the buffer is only used for any other content */
+    private final GopherMenuParser parser;
+    private final ByteArrayOutputStream buffer;
+
+    /* number of items already reported to the listener */
+    private int reportedCount;
+
+    /* decoder for text content, the bytes of a character split
+        between two reads are kept until the rest arrives */
+    private final CharsetDecoder decoder;
+    private ByteBuffer undecoded;
+    private final StringBuilder decodedText;
+
+    /* image bytes not yet reported to the listener */
+    private final ByteArrayOutputStream imageData;
+
+    GopherMenuBuilder(GopherUrl url, GopherMenuItemType contentType, TransportEventListener eventListener) {
+        this.url = url;
+        this.contentType = contentType;
+        this.eventListener = eventListener;
+        this.parser = contentType.isMenu() ? new GopherMenuParser(GopherMenu.getCharset()) : null;
+        this.buffer = (parser == null) ? new ByteArrayOutputStream() : null;
+        this.reportedCount = 0;
+        this.decoder = isText(contentType) && eventListener != null ? createDecoder() : null;
+        this.undecoded = ByteBuffer.allocate(0);
+        this.decodedText = new StringBuilder();
+        this.imageData = contentType.isImage() && eventListener != null ? new ByteArrayOutputStream() : null;
+    }
+
+    private static boolean isText(GopherMenuItemType contentType) {
+        return !contentType.isMenu() && !contentType.isBinary() && !contentType.isImage();
+    }
+
+    private static CharsetDecoder createDecoder() {
+        String charsetName = GopherMenu.getCharset();
+        Charset charset = Charset.isSupported(charsetName) ? Charset.forName(charsetName) : Charset.defaultCharset();
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Appends received bytes to the response
+     *
+     * @param data The buffer with the received bytes
+     *
+     * @param offset Offset of the first byte in the buffer
+     *
+     * @param length Number of bytes received
+     */
+    void write(byte[] data, int offset, int length) {
+        if (parser != null) {
+            parser.feed(data, offset, length);
+        } else {
+            buffer.write(data, offset, length);
+            if (decoder != null) {
+                decode(data, offset, length, false);
+            }
+            if (imageData != null) {
+                imageData.write(data, offset, length);
+            }
+        }
+    }
+
+    private void decode(byte[] data, int offset, int length, boolean endOfInput) {
+        ByteBuffer input = ByteBuffer.allocate(undecoded.remaining() + length);
+        input.put(undecoded).put(data, offset, length).flip();
+
+        CharBuffer output = CharBuffer.allocate((int) (input.remaining() * (double) decoder.maxCharsPerByte()) + 1);
+        decoder.decode(input, output, endOfInput);
+        if (endOfInput) {
+            decoder.flush(output);
+        }
+        output.flip();
+        decodedText.append(output);
+        undecoded = input;
+    }
+
+    /**
+     * Reports the items parsed since the last call to the listener
+     */
+    void reportItems() {
+        if (parser == null || eventListener == null || parser.hasFailed()) {
+            return;
+        }
+
+        int count = parser.getItemCount();
+        if (count > reportedCount) {
+            List<GopherMenuItem> received = new ArrayList<>(parser.getItemList().subList(reportedCount, count));
+            reportedCount = count;
+            eventListener.itemsReceived(url, received);
+        }
+    }
+
+    /**
+     * Reports the text decoded since the last call to the listener
+     */
+    void reportText() {
+        if (decoder == null || decodedText.length() == 0) {
+            return;
+        }
+
+        String received = decodedText.toString();
+        decodedText.setLength(0);
+        eventListener.textReceived(url, received);
+    }
+
+    /**
+     * Reports the image bytes received since the last call to the listener
+     */
+    void reportImageData() {
+        if (imageData == null || imageData.size() == 0) {
+            return;
+        }
+
+        byte[] received = imageData.toByteArray();
+        imageData.reset();
+        eventListener.imageDataReceived(url, received);
+    }
+
+    /**
+     * Creates the page object from the complete response
+     *
+     * @return The GopherMenu with the received content
+     */
+    GopherMenu build() {
+        if (parser == null) {
+            if (decoder != null) {
+                /* a character cut off at the end is reported as well */
+                decode(new byte[0], 0, 0, true);
+                reportText();
+            }
+            return new GopherMenu(buffer.toByteArray(), contentType, url);
+        }
+
+        parser.finish();
+        return new GopherMenu(parser.getByteArray(), url, parser);
+    }
+}
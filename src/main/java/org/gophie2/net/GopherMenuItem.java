@@ -19,7 +19,14 @@ package org.gophie2.net;
 
 public class GopherMenuItem {
 
-    private static final int DEFAULT_PORT = 70;
+    static final int DEFAULT_PORT = 70;
+
+    /* menu store this item is a view of, null for standalone items */
+    private final GopherMenuParser source;
+    private final int index;
+
+    /* memoized url of standalone items */
+    private String urlString;
 
     /* defines the type of this gopher item */
     private GopherMenuItemType itemType;
@@ -77,11 +84,26 @@ public class GopherMenuItem {
         }
     }
 
+    /**
+     * Constructs a lightweight view of an item in a parsed gopher menu, all
+     * values are read from the menu store when requested
+     *
+     * @param source The parser holding the gopher menu
+     *
+     * @param index The index of the item in the menu
+     */
+    GopherMenuItem(GopherMenuParser source, int index) {
+        this.source = source;
+        this.index = index;
+    }
+
     /**
      * Constructs an empty gopher item
      *
      */
     public GopherMenuItem() {
+        source = null;
+        index = -1;
         portNumber = DEFAULT_PORT;
         itemType = GopherMenuItemType.UNKNOWN;
         userDisplayString = "";
@@ -93,6 +115,9 @@ public class GopherMenuItem {
         Returns the item type as GopherMenuItemType enum
      */
     public GopherMenuItemType getItemType() {
+        if (source != null) {
+            return source.getItemType(index);
+        }
         return this.itemType;
     }
 
@@ -102,6 +127,9 @@ public class GopherMenuItem {
         gopher item when being displayed
      */
     public String getUserDisplayString() {
+        if (source != null) {
+            return source.getUserDisplayString(index);
+        }
         return this.userDisplayString;
     }
 
@@ -109,6 +137,9 @@ public class GopherMenuItem {
         Returns the selector of this gopher item
      */
     public String getSelector() {
+        if (source != null) {
+            return source.getSelector(index);
+        }
         return this.selector;
     }
 
@@ -116,6 +147,9 @@ public class GopherMenuItem {
         Returns the item host name as a string
      */
     public String getHostName() {
+        if (source != null) {
+            return source.getHostName(index);
+        }
         return this.hostName;
     }
 
@@ -124,43 +158,69 @@ public class GopherMenuItem {
         item's host to collect the content from
      */
     public int getPortNumber() {
+        if (source != null) {
+            return source.getPortNumber(index);
+        }
         return this.portNumber;
     }
 
     /**
-     * Creates a URL string for this item
+     * Returns the URL string for this item, which is only created once
      *
      * @return URL for this item as string
      */
     public String getUrlString() {
+        if (source != null) {
+            return source.getUrlString(index);
+        }
+        if (urlString == null) {
+            urlString = createUrlString(itemType, selector, hostName, portNumber);
+        }
+        return urlString;
+    }
+
+    /**
+     * Creates a URL string for an item
+     *
+     * @param itemType The type of the item
+     *
+     * @param selector The selector of the item
+     *
+     * @param hostName The host name of the item
+     *
+     * @param portNumber The port number of the item
+     *
+     * @return URL for the item as string
+     */
+    static String createUrlString(GopherMenuItemType itemType, String selector, String hostName, int portNumber) {
         String result = "";
 
         /* unknown or information links do not have
             any link associated with it */
-        if (this.itemType.isUrlDisplayable()) {
+        if (itemType.isUrlDisplayable()) {
             /* check if the selector contains a URL */
-            if (this.selector.startsWith("URL:") == true
-                    || this.selector.startsWith("/URL:") == true) {
+            if (selector.startsWith("URL:") == true
+                    || selector.startsWith("/URL:") == true) {
                 /* selector is link to other resource */
-                if (this.selector.startsWith("/URL:")) {
-                    result = this.selector.substring(5);
+                if (selector.startsWith("/URL:")) {
+                    result = selector.substring(5);
                 } else {
-                    result = this.selector.substring(4);
+                    result = selector.substring(4);
                 }
             } else {
                 /* protocol is definitely gopher */
-                result = "gopher://" + this.hostName;
-                if (this.portNumber != 70) {
-                    result += ":" + this.portNumber;
+                result = "gopher://" + hostName;
+                if (portNumber != 70) {
+                    result += ":" + portNumber;
                 }
 
                 /* add the slash to the URL if not present */
-                if (!this.selector.startsWith("/")) {
+                if (!selector.startsWith("/")) {
                     result += "/";
                 }
 
                 /* finally append the selector */
-                result += this.selector;
+                result += selector;
             }
         }
 
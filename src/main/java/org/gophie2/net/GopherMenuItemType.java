@@ -16,6 +16,8 @@
  */
 package org.gophie2.net;
 
+import java.util.Arrays;
+
 /**
  * defines the official types of gopher items
  */
@@ -42,6 +44,19 @@ public enum GopherMenuItemType {
     /* Gophie specific (Non-standard) */
     UNKNOWN("?", "dat", false, "Unknown");
     // any other unknown item type code
+
+    /* lookup table to resolve type code bytes without scanning */
+    private static final GopherMenuItemType[] CODE_TABLE = new GopherMenuItemType[256];
+
+    static {
+        Arrays.fill(CODE_TABLE, UNKNOWN);
+        for (GopherMenuItemType t : values()) {
+            if (t != UNKNOWN) {
+                CODE_TABLE[t.code.charAt(0)] = t;
+            }
+        }
+    }
+
     private final String fileExt;
     private final boolean binary;
     private final String typeName;
@@ -87,12 +102,21 @@ public enum GopherMenuItemType {
     }
 
     public static GopherMenuItemType getByCode(String code) {
-        for (GopherMenuItemType t : values()) {
-            if (t.code.equals(code)) {
-                return t;
-            }
+        if (code.length() != 1 || code.charAt(0) >= CODE_TABLE.length) {
+            return UNKNOWN;
         }
-        return UNKNOWN;
+        return CODE_TABLE[code.charAt(0)];
+    }
+
+    /**
+     * Returns the item type for the type code byte of a gophermap line
+     *
+     * @param code The first byte of the gophermap line
+     *
+     * @return The item type, UNKNOWN when the code is not defined
+     */
+    public static GopherMenuItemType getByCode(byte code) {
+        return CODE_TABLE[code & 0xff];
     }
 
     public boolean isUrlDisplayable() {
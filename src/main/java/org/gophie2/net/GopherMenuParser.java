@@ -0,0 +1,436 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net;
+
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Push parser for gophermaps that is fed with the bytes as they arrive from
+ * the server and creates a GopherMenuItem as soon as a line is complete.
+ *
+ * The parser also is the compact backing store of the parsed menu. It keeps
+ * the raw response, scans it once for TAB, CR and LF and stores the field
+ * offsets and type codes of all items in primitive arrays. GopherMenuItem
+ * objects are just views on these arrays and strings are only decoded from
+ * the raw bytes when requested.
+ *
+ * The parser is fed on the fetch thread while the items already handed out
+ * are read on the event dispatch thread. After each batch of bytes the
+ * parser publishes the arrays through a volatile snapshot, the item views
+ * only read the snapshot and the values it covers are never written again.
+ */
+public class GopherMenuParser {
+
+    /* initial size of the response buffer */
+    private static final int INITIAL_BUFFER_SIZE = 16384;
+
+    /* initial number of items the columns can hold */
+    private static final int INITIAL_ITEM_CAPACITY = 256;
+
+    /* number of tab separated fields in a gophermap line */
+    private static final int FIELD_COUNT = 4;
+
+    /* layout of the values per item in the offset column */
+    private static final int DISPLAY_START = 0;
+    private static final int DISPLAY_END = 1;
+    private static final int SELECTOR_START = 2;
+    private static final int SELECTOR_END = 3;
+    private static final int HOST_START = 4;
+    private static final int HOST_END = 5;
+    private static final int PORT = 6;
+    private static final int VALUES_PER_ITEM = 7;
+
+    private final List<GopherMenuItem> itemList;
+    private Charset charset;
+
+    /* columns with the values of all parsed items, written
+        by the parsing thread only */
+    private int[] offsets;
+    private byte[] typeCodes;
+    private String[] urls;
+    private int itemCount;
+
+    /* raw bytes of the response received so far */
+    private byte[] data;
+    private int length;
+
+    /* scanner state for the line currently being received */
+    private int scanPosition;
+    private int lineStart;
+    private int tabCount;
+    private final int[] tabPosition;
+
+    /* set when the content cannot be parsed */
+    private boolean failed;
+
+    /* the columns published for the readers of the items */
+    private volatile Columns columns;
+
+    /**
+     * Constructs the parser
+     *
+     * @param charset The charset to decode the gophermap lines with
+     */
+    public GopherMenuParser(String charset) {
+        this.itemList = new ItemList();
+        this.offsets = new int[INITIAL_ITEM_CAPACITY * VALUES_PER_ITEM];
+        this.typeCodes = new byte[INITIAL_ITEM_CAPACITY];
+        this.urls = new String[INITIAL_ITEM_CAPACITY];
+        this.itemCount = 0;
+        this.data = new byte[INITIAL_BUFFER_SIZE];
+        this.length = 0;
+        this.scanPosition = 0;
+        this.lineStart = 0;
+        this.tabCount = 0;
+        this.tabPosition = new int[FIELD_COUNT - 1];
+        this.failed = false;
+
+        try {
+            this.charset = Charset.forName(charset);
+        } catch (IllegalArgumentException ex) {
+            /* drop a quick info on the console when decoding fails */
+            System.out.println("Failed to decode bytes of Gopher Page: " + ex.getMessage());
+            this.failed = true;
+        }
+        publish();
+    }
+
+    /**
+     * Constructs the parser for a response that was received completely,
+     * the bytes are parsed right away without copying them
+     *
+     * @param charset The charset to decode the gophermap lines with
+     *
+     * @param source The raw bytes of the gophermap
+     */
+    public GopherMenuParser(String charset, byte[] source) {
+        this(charset);
+        this.data = source;
+        this.length = source.length;
+        scan();
+        finish();
+    }
+
+    /**
+     * Feeds received bytes into the parser, every complete line is turned
+     * into a GopherMenuItem right away
+     *
+     * @param source The buffer with the received bytes
+     *
+     * @param offset Offset of the first byte in the buffer
+     *
+     * @param count Number of bytes to consume
+     */
+    public void feed(byte[] source, int offset, int count) {
+        if (length + count > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + count));
+        }
+        System.arraycopy(source, offset, data, length, count);
+        length += count;
+        scan();
+        publish();
+    }
+
+    /**
+     * Parses the last line when the server did not terminate it and trims
+     * the response buffer to its actual size
+     */
+    public void finish() {
+        if (lineStart < length) {
+            parseLine(length);
+            lineStart = length;
+        }
+        if (data.length != length) {
+            data = Arrays.copyOf(data, length);
+        }
+        if (typeCodes.length != itemCount) {
+            offsets = Arrays.copyOf(offsets, itemCount * VALUES_PER_ITEM);
+            typeCodes = Arrays.copyOf(typeCodes, itemCount);
+            urls = Arrays.copyOf(urls, itemCount);
+        }
+        publish();
+    }
+
+    /**
+     * Publishes the columns parsed so far, the values below the published
+     * counts are complete and never change afterwards
+     */
+    private void publish() {
+        columns = new Columns(data, length, charset, offsets, typeCodes, urls, itemCount);
+    }
+
+    /**
+     * Returns a view on all items parsed so far
+     *
+     * @return List with the parsed GopherMenuItem objects
+     */
+    public List<GopherMenuItem> getItemList() {
+        return itemList;
+    }
+
+    /**
+     * Returns the number of items parsed so far
+     *
+     * @return The number of parsed items
+     */
+    public int getItemCount() {
+        return columns.itemCount;
+    }
+
+    /**
+     * Returns the raw bytes of the response, which is only a copy while the
+     * parser is not finished
+     *
+     * @return Byte array with the raw response
+     */
+    public byte[] getByteArray() {
+        Columns current = columns;
+        return current.data.length == current.length ? current.data : Arrays.copyOf(current.data, current.length);
+    }
+
+    /**
+     * Returns whether the content could not be parsed in which case it is
+     * most likely not a gophermap at all
+     *
+     * @return true when parsing failed, otherwise false
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    GopherMenuItemType getItemType(int index) {
+        return GopherMenuItemType.getByCode(columns.typeCodes[index]);
+    }
+
+    String getUserDisplayString(int index) {
+        Columns current = columns;
+        int base = index * VALUES_PER_ITEM;
+        return current.decode(current.offsets[base + DISPLAY_START], current.offsets[base + DISPLAY_END]);
+    }
+
+    String getSelector(int index) {
+        Columns current = columns;
+        int base = index * VALUES_PER_ITEM;
+        return current.decode(current.offsets[base + SELECTOR_START], current.offsets[base + SELECTOR_END]);
+    }
+
+    String getHostName(int index) {
+        Columns current = columns;
+        int base = index * VALUES_PER_ITEM;
+        return current.decode(current.offsets[base + HOST_START], current.offsets[base + HOST_END]);
+    }
+
+    int getPortNumber(int index) {
+        return columns.offsets[index * VALUES_PER_ITEM + PORT];
+    }
+
+    String getUrlString(int index) {
+        String[] currentUrls = columns.urls;
+        String result = currentUrls[index];
+        if (result == null) {
+            /* create the url once, it is used for rendering and lookups,
+                a url lost while the columns grow is just created again */
+            result = GopherMenuItem.createUrlString(getItemType(index),
+                    getSelector(index), getHostName(index), getPortNumber(index));
+            currentUrls[index] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Decodes a range of the raw response into a string
+     *
+     * @param start Offset of the first byte
+     *
+     * @param end Offset after the last byte
+     *
+     * @return The decoded string
+     */
+    String decode(int start, int end) {
+        if (end <= start) {
+            return "";
+        }
+        return new String(data, start, end - start, charset);
+    }
+
+    private void scan() {
+        if (failed) {
+            scanPosition = length;
+            return;
+        }
+
+        for (int i = scanPosition; i < length; i++) {
+            byte value = data[i];
+            if (value == '\t') {
+                if (tabCount < tabPosition.length) {
+                    tabPosition[tabCount] = i;
+                }
+                tabCount++;
+            } else if (value == '\n') {
+                parseLine(i);
+                lineStart = i + 1;
+                tabCount = 0;
+            }
+        }
+        scanPosition = length;
+    }
+
+    private void parseLine(int lineEnd) {
+        /* strip the carriage return of the line termination */
+        int end = lineEnd;
+        if (end > lineStart && data[end - 1] == '\r') {
+            end--;
+        }
+
+        /* skip empty lines and the terminating full stop */
+        if (end == lineStart || (end - lineStart == 1 && data[lineStart] == '.')) {
+            return;
+        }
+
+        /* the fields end at the next tab or at the end of the line */
+        int fields = Math.min(tabCount, tabPosition.length);
+        int displayEnd = fields > 0 ? tabPosition[0] : end;
+        int selectorStart = fields > 0 ? tabPosition[0] + 1 : end;
+        int selectorEnd = fields > 1 ? tabPosition[1] : end;
+        int hostStart = fields > 1 ? tabPosition[1] + 1 : end;
+        int hostEnd = fields > 2 ? tabPosition[2] : end;
+        int portStart = fields > 2 ? tabPosition[2] + 1 : end;
+        int portEnd = end;
+        if (tabCount > tabPosition.length) {
+            /* gopher+ lines carry more fields after the port */
+            for (int i = portStart; i < end; i++) {
+                if (data[i] == '\t') {
+                    portEnd = i;
+                    break;
+                }
+            }
+        }
+
+        if (itemCount == typeCodes.length) {
+            int capacity = itemCount * 2;
+            offsets = Arrays.copyOf(offsets, capacity * VALUES_PER_ITEM);
+            typeCodes = Arrays.copyOf(typeCodes, capacity);
+            urls = Arrays.copyOf(urls, capacity);
+        }
+
+        /* store the values of the item in the columns */
+        int base = itemCount * VALUES_PER_ITEM;
+        offsets[base + DISPLAY_START] = lineStart + 1;
+        offsets[base + DISPLAY_END] = displayEnd;
+        offsets[base + SELECTOR_START] = trimStart(selectorStart, selectorEnd);
+        offsets[base + SELECTOR_END] = trimEnd(selectorStart, selectorEnd);
+        offsets[base + HOST_START] = trimStart(hostStart, hostEnd);
+        offsets[base + HOST_END] = trimEnd(hostStart, hostEnd);
+        offsets[base + PORT] = parsePort(portStart, portEnd);
+        typeCodes[itemCount] = data[lineStart];
+        itemCount++;
+    }
+
+    private int trimStart(int start, int end) {
+        int result = start;
+        while (result < end && (data[result] & 0xff) <= ' ') {
+            result++;
+        }
+        return result;
+    }
+
+    private int trimEnd(int start, int end) {
+        int result = end;
+        while (result > start && (data[result - 1] & 0xff) <= ' ') {
+            result--;
+        }
+        return result;
+    }
+
+    private int parsePort(int portStart, int portEnd) {
+        int start = trimStart(portStart, portEnd);
+        int end = trimEnd(start, portEnd);
+        if (start == end) {
+            return GopherMenuItem.DEFAULT_PORT;
+        }
+
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9 || result > 65535) {
+                /* report the failure */
+                System.out.println("Found what was supposed to be a port number "
+                        + "and it did not parse into an integer: " + decode(start, end));
+                return GopherMenuItem.DEFAULT_PORT;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    /**
+     * Snapshot of the columns handed from the parsing thread to the readers
+     * of the items, the arrays may hold more values than it covers
+     */
+    private static final class Columns {
+
+        private final byte[] data;
+        private final int length;
+        private final Charset charset;
+        private final int[] offsets;
+        private final byte[] typeCodes;
+        private final String[] urls;
+        private final int itemCount;
+
+        Columns(byte[] data, int length, Charset charset, int[] offsets, byte[] typeCodes, String[] urls, int itemCount) {
+            this.data = data;
+            this.length = length;
+            this.charset = charset;
+            this.offsets = offsets;
+            this.typeCodes = typeCodes;
+            this.urls = urls;
+            this.itemCount = itemCount;
+        }
+
+        String decode(int start, int end) {
+            if (end <= start) {
+                return "";
+            }
+            return new String(data, start, end - start, charset);
+        }
+    }
+
+    /**
+     * List of lightweight item views on the columns of this parser
+     */
+    private class ItemList extends AbstractList<GopherMenuItem> implements RandomAccess {
+
+        @Override
+        public GopherMenuItem get(int index) {
+            int count = columns.itemCount;
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+            }
+            return new GopherMenuItem(GopherMenuParser.this, index);
+        }
+
+        @Override
+        public int size() {
+            return columns.itemCount;
+        }
+    }
+}
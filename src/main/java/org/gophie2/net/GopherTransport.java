@@ -19,181 +19,366 @@ package org.gophie2.net;
 
 import java.io.*;
 import java.net.ConnectException;
-import java.net.Socket;
+import java.net.InetSocketAddress;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import org.gophie2.net.event.BodySubscriber;
 import org.gophie2.net.event.TransportEventListener;
 
 public class GopherTransport implements Transport {
 
-    /* thread with the active fetch process */
-    private Thread thread;
-    private Boolean cancelled;
+    /* size of the buffer a download is read into, a blocking read
+        returns whatever arrived up to this size */
+    private static final int BUFFER_SIZE = 16384;
+
+    /* executors running the asynchronous operations */
+    private final ExecutorService fetchExecutor;
+    private final ExecutorService downloadExecutor;
+
+    /* queue page fetches wait in for a connection to the host */
+    private final HostLimiter.Lane lane;
+
+    /* the request started last, cancelled by cancel() */
+    private volatile TransportRequest<?> current;
 
     public GopherTransport() {
-        cancelled = false;
+        this(false);
     }
 
-    @Override
-    public void cancel() {
-        if (this.thread != null) {
-            this.thread.interrupt();
-            this.cancelled = true;
-        }
+    /**
+     * Constructs the transport
+     *
+     * @param background true when the pages fetched are not requested by
+     * the user, they then only connect when no other request is waiting
+     */
+    public GopherTransport(boolean background) {
+        this(TransportExecutors.getFetchExecutor(), TransportExecutors.getDownloadExecutor(), background);
     }
 
     /**
-     * Returns whether the current operation was cancelled or not
+     * Constructs the transport with the executors to run operations on
+     *
+     * @param fetchExecutor Executor for asynchronous page fetches
+     *
+     * @param downloadExecutor Executor for downloads
      *
-     * @return true when cancelled, false otherwise
+     * @param background true when the pages fetched are not requested by
+     * the user
      */
-    private Boolean isCancelled() {
-        return this.cancelled;
+    public GopherTransport(ExecutorService fetchExecutor, ExecutorService downloadExecutor, boolean background) {
+        this.fetchExecutor = fetchExecutor;
+        this.downloadExecutor = downloadExecutor;
+        this.lane = background ? HostLimiter.Lane.BACKGROUND : HostLimiter.Lane.PAGE;
     }
 
     @Override
-    public void downloadAsync(String url, String targetFile, TransportEventListener eventListener) {
-        /* instanciate the new thread */
-        GopherTransport clientObject = this;
-        this.thread = new Thread(() -> {
+    public void cancel() {
+        TransportRequest<?> request = current;
+        if (request != null) {
+            request.cancel(true);
+        }
+    }
+
+    @Override
+    public TransportRequest<Void> downloadAsync(String url, String targetFile, TransportEventListener eventListener, BandwidthLimiter bandwidthLimiter) {
+        GopherUrl gopherUrl = new GopherUrl(url);
+        TransportRequest<Void> request = new TransportRequest<>();
+        request.reportTo(eventListener, gopherUrl);
+        current = request;
+
+        /* submit the download to the executor */
+        Future<?> task = downloadExecutor.submit(() -> {
             try {
+                download(request, gopherUrl, targetFile, eventListener, bandwidthLimiter);
+                request.complete(null);
+            } catch (GopherNetworkException ex) {
+                request.fail(ex);
+            }
+        });
+        /* the connection unblocks a running task when cancelled */
+        request.onAbort(() -> task.cancel(false));
+        return request;
+    }
 
-                try (OutputStream fileStream = new FileOutputStream(new File(targetFile))) {
-
-                    GopherUrl gopherUrl = new GopherUrl(url);
-                    try (Socket gopherSocket = new Socket(gopherUrl.getHost(), gopherUrl.getPort())) {
-                        byte[] gopherRequest = (gopherUrl.getSelector() + "\r\n").getBytes(StandardCharsets.US_ASCII);
-                        (new DataOutputStream(gopherSocket.getOutputStream())).write(gopherRequest);
-                        /* read byte in chunks and report progress */
-                        int read;
-                        InputStream socketStream = gopherSocket.getInputStream();
-                        byte[] data = new byte[16384];
-                        long totalByteCount = 0;
-                        /* read byte by byte to be able to report progress */
-                        while ((read = socketStream.read(data, 0, data.length)) != -1) {
-                            fileStream.write(data, 0, read);
-
-                            /* calculate total bytes read */
-                            totalByteCount = totalByteCount + data.length;
-
-                            /* report byte count to listener */
-                            if (!clientObject.isCancelled()) {
-                                if (eventListener != null) {
-                                    eventListener.progress(gopherUrl, totalByteCount);
-                                }
-                            }
-                        }
+    private void download(TransportRequest<Void> request, GopherUrl gopherUrl, String targetFile, TransportEventListener eventListener, BandwidthLimiter bandwidthLimiter) throws GopherNetworkException {
+        try {
+            try (FileChannel fileChannel = FileChannel.open(new File(targetFile).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                    Connection connection = new Connection(request, gopherUrl, HostLimiter.Lane.DOWNLOAD)) {
+                SocketChannel gopherChannel = connection.open();
+
+                /* the data still passes through user space, there is no
+                    socket to file path in the jdk, but reading into one
+                    direct buffer spares the channels a temporary buffer
+                    and the heap a copy, the limiter decides how much
+                    may be read at once */
+                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                long totalByteCount = 0;
+                while (true) {
+                    buffer.clear();
+                    buffer.limit((int) bandwidthLimiter.acquire(BUFFER_SIZE));
+                    int read = gopherChannel.read(buffer);
+                    if (read < 0) {
+                        break;
                     }
-                }
+                    bandwidthLimiter.consume(read);
 
-                if (!clientObject.isCancelled()) {
-                    if (eventListener != null) {
-                        eventListener.loaded(null);
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        totalByteCount += fileChannel.write(buffer, totalByteCount);
                     }
-                }
-            } catch (IOException ex) {
-                /* log the exception message */
-                System.out.println("Download failed (" + url + "):" + ex.getMessage());
-
-                /* remove the file if already created */
-                File createdFile = new File(targetFile);
-                if (createdFile.exists()) {
-                    createdFile.delete();
-                }
 
-                /* notify the handlers */
-                if (!clientObject.isCancelled()) {
-                    if (eventListener != null) {
-                        eventListener.failed(Error.EXCEPTION, new GopherUrl(url));
+                    /* report byte count to listener */
+                    if (!request.isCancelled()) {
+                        if (eventListener != null) {
+                            eventListener.progress(gopherUrl, totalByteCount);
+                        }
                     }
                 }
             }
-        });
+        } catch (IOException ex) {
+            /* log the exception message */
+            System.out.println("Download failed (" + gopherUrl.getUrlString() + "):" + ex.getMessage());
+
+            /* remove the file if already created */
+            File createdFile = new File(targetFile);
+            if (createdFile.exists()) {
+                createdFile.delete();
+            }
 
-        /* start the new thread */
-        this.thread.start();
+            throw translate(request, ex);
+        }
     }
 
     @Override
-    public void fetchAsync(String url, GopherMenuItemType contentType, TransportEventListener eventListener) {
-        /* instanciate the new thread */
-        GopherTransport clientObject = this;
-        this.thread = new Thread(() -> {
+    public TransportRequest<GopherMenu> fetchAsync(String url, GopherMenuItemType contentType, TransportEventListener eventListener) {
+        GopherUrl gopherUrl = new GopherUrl(url);
+        TransportRequest<GopherMenu> request = new TransportRequest<>();
+        request.reportTo(eventListener, gopherUrl);
+        current = request;
+
+        /* submit the fetch to the executor */
+        Future<?> task = fetchExecutor.submit(() -> {
             try {
-                GopherMenu resultPage = fetch(url, contentType, eventListener);
+                request.complete(fetch(request, gopherUrl, contentType, eventListener));
+            } catch (GopherNetworkException ex) {
+                request.fail(ex);
+            }
+        });
+        /* the connection unblocks a running task when cancelled */
+        request.onAbort(() -> task.cancel(false));
+        return request;
+    }
 
-                if (!clientObject.isCancelled()) {
-                    if (eventListener != null) {
-                        eventListener.loaded(resultPage);
-                    }
+    @Override
+    public TransportRequest<Void> streamAsync(String url, BodySubscriber subscriber) {
+        GopherUrl gopherUrl = new GopherUrl(url);
+        TransportRequest<Void> request = new TransportRequest<>();
+        BodyStream stream = new BodyStream(subscriber, request);
+        request.onAbort(stream::wake);
+        current = request;
+        stream.start();
+
+        /* the stream waits for demand of the subscriber, which is delivered
+            on the fetch executor, so it must not run there itself */
+        Future<?> task = downloadExecutor.submit(() -> {
+            try {
+                stream(request, gopherUrl, stream);
+
+                /* an aborted stream already signalled its end */
+                if (!request.isDone()) {
+                    stream.complete();
                 }
             } catch (GopherNetworkException ex) {
-                if (!clientObject.isCancelled()) {
-                    if (eventListener != null) {
-                        eventListener.failed(ex.getGopherErrorType(), new GopherUrl(url));
-                    }
-                }
+                stream.error(ex);
             }
         });
+        /* the connection unblocks a running task when cancelled */
+        request.onAbort(() -> task.cancel(false));
+        return request;
+    }
 
-        /* start the new thread */
-        this.thread.start();
+    private void stream(TransportRequest<Void> request, GopherUrl gopherUrl, BodyStream stream) throws GopherNetworkException {
+        try (Connection connection = new Connection(request, gopherUrl, lane)) {
+            SocketChannel gopherChannel = connection.open();
+
+            while (true) {
+                /* stop reading while the subscriber cannot keep up */
+                stream.awaitDemand();
+                if (request.isDone()) {
+                    return;
+                }
+
+                ByteBuffer chunk = ByteBuffer.allocate(16384);
+                if (gopherChannel.read(chunk) == -1) {
+                    return;
+                }
+                chunk.flip();
+                stream.next(chunk);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new GopherNetworkException(Error.USER_CANCELLED, ex.getMessage());
+        } catch (IOException ex) {
+            throw translate(request, ex);
+        }
     }
 
     @Override
     public GopherMenu fetch(String url, GopherMenuItemType contentType, TransportEventListener eventListener) throws GopherNetworkException {
-        GopherMenu result = null;
+        TransportRequest<GopherMenu> request = new TransportRequest<>();
+        current = request;
 
         try {
-            /* string result with content */
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-            /* parse the url and instanciate the client */
-            GopherUrl gopherUrl = new GopherUrl(url);
-            try (Socket gopherSocket = new Socket(gopherUrl.getHost(), gopherUrl.getPort())) {
-                byte[] gopherRequest = (gopherUrl.getSelector() + "\r\n").getBytes(StandardCharsets.US_ASCII);
-                (new DataOutputStream(gopherSocket.getOutputStream())).write(gopherRequest);
-                /* read byte in chunks and report progress */
-                int read;
-                InputStream socketStream = gopherSocket.getInputStream();
-                byte[] data = new byte[16384];
-                long totalByteCount = 0;
-                /* read byte by byte to be able to report progress */
-                while ((read = socketStream.read(data, 0, data.length)) != -1) {
-                    buffer.write(data, 0, read);
+            GopherMenu result = fetch(request, new GopherUrl(url), contentType, eventListener);
+            request.complete(result);
+            return result;
+        } catch (GopherNetworkException ex) {
+            request.fail(ex);
+            throw ex;
+        }
+    }
 
-                    /* calculate total bytes read */
-                    totalByteCount = totalByteCount + data.length;
+    private GopherMenu fetch(TransportRequest<GopherMenu> request, GopherUrl gopherUrl, GopherMenuItemType contentType, TransportEventListener eventListener) throws GopherNetworkException {
+        /* collects the content and parses menus on the fly */
+        GopherMenuBuilder builder = new GopherMenuBuilder(gopherUrl, contentType, eventListener);
+        try (Connection connection = new Connection(request, gopherUrl, lane)) {
+            SocketChannel gopherChannel = connection.open();
 
-                    /* report byte count to listener */
-                    if (!this.isCancelled()) {
-                        if (eventListener != null) {
-                            eventListener.progress(gopherUrl, totalByteCount);
-                        }
+            /* read byte in chunks and report progress */
+            int read;
+            byte[] data = new byte[16384];
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            long totalByteCount = 0;
+            while ((read = gopherChannel.read(buffer)) != -1) {
+                builder.write(data, 0, read);
+                buffer.clear();
+
+                /* calculate total bytes read */
+                totalByteCount = totalByteCount + read;
+
+                /* report byte count, new items, text and image data to listener */
+                if (!request.isCancelled()) {
+                    if (eventListener != null) {
+                        eventListener.progress(gopherUrl, totalByteCount);
                     }
+                    builder.reportItems();
+                    builder.reportText();
+                    builder.reportImageData();
                 }
-                /* close the socket to the server */
             }
-
-            /* set the result page */
-            result = new GopherMenu(buffer.toByteArray(), contentType, gopherUrl);
-        } catch (ConnectException ex) {
-            /* handle host connection errors */
-            throw new GopherNetworkException(Error.CONNECT_FAILED, ex.getMessage());
-        } catch (UnknownHostException ex) {
-            /* handle host not found exception */
-            throw new GopherNetworkException(Error.HOST_UNKNOWN, ex.getMessage());
-        } catch (SocketTimeoutException ex) {
-            /* handle host not found exception */
-            throw new GopherNetworkException(Error.CONNECTION_TIMEOUT, ex.getMessage());
         } catch (IOException ex) {
+            throw translate(request, ex);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Translates the exception of a failed operation, operations of a
+     * cancelled request always fail as cancelled by the user
+     */
+    private static GopherNetworkException translate(TransportRequest<?> request, IOException ex) {
+        if (request.isCancelled()) {
+            return new GopherNetworkException(Error.USER_CANCELLED, ex.getMessage());
+        }
+
+        GopherNetworkException result = NioExchange.translate(ex);
+        if (result.getGopherErrorType() == Error.EXCEPTION) {
             /* handle the error properly and raise and event */
             System.out.println("GOPHER NETWORK EXCEPTION: " + ex.getMessage());
-            throw new GopherNetworkException(Error.EXCEPTION, ex.getMessage());
         }
-
         return result;
     }
+
+    /**
+     * Blocking connection of a single request. Cancelling the request
+     * releases the connection slot and closes the channel, which unblocks
+     * any thread waiting for or reading from it.
+     */
+    private static class Connection implements Closeable {
+
+        private final TransportRequest<?> request;
+        private final GopherUrl gopherUrl;
+        private final HostLimiter.Ticket ticket;
+        private volatile SocketChannel channel;
+
+        Connection(TransportRequest<?> request, GopherUrl gopherUrl, HostLimiter.Lane lane) {
+            this.request = request;
+            this.gopherUrl = gopherUrl;
+            this.ticket = HostLimiter.getDefault().createTicket(gopherUrl, lane);
+
+            /* cancelling the request closes the connection */
+            request.onAbort(this::close);
+        }
+
+        /**
+         * Waits until the host limiter grants a connection to the host,
+         * connects and sends the selector
+         *
+         * @return The connected blocking channel
+         *
+         * @throws IOException when the request was cancelled or connecting
+         * failed
+         */
+        SocketChannel open() throws IOException {
+            InetSocketAddress address = new InetSocketAddress(gopherUrl.getHost(), gopherUrl.getPort());
+            if (address.isUnresolved()) {
+                throw new UnknownHostException(gopherUrl.getHost());
+            }
+
+            try {
+                ticket.await();
+            } catch (InterruptedException ex) {
+                throw new InterruptedIOException("Cancelled while waiting for a connection");
+            }
+
+            if (request.isDone()) {
+                throw new InterruptedIOException("Request is no longer wanted");
+            }
+
+            try {
+                channel = SocketChannel.open(address);
+                ticket.connected();
+            } catch (ConnectException | SocketTimeoutException ex) {
+                /* the host refused or did not answer in time */
+                ticket.connectFailed();
+                throw ex;
+            }
+
+            /* the request might have been cancelled or aborted while connecting */
+            if (request.isDone()) {
+                close();
+                throw new InterruptedIOException("Request is no longer wanted");
+            }
+
+            ByteBuffer gopherRequest = ByteBuffer.wrap((gopherUrl.getSelector() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            while (gopherRequest.hasRemaining()) {
+                channel.write(gopherRequest);
+            }
+            return channel;
+        }
+
+        @Override
+        public void close() {
+            ticket.release();
+            SocketChannel current = channel;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException ex) {
+                    /* nothing left to do with this channel anyway */
+                    System.out.println("Failed to close channel: " + ex.getMessage());
+                }
+            }
+        }
+    }
 }
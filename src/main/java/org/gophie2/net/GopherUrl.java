@@ -17,6 +17,8 @@
  */
 package org.gophie2.net;
 
+import java.util.Locale;
+
 public class GopherUrl {
 
     private int port = 70;
@@ -53,6 +55,25 @@ public class GopherUrl {
         return result;
     }
 
+    /**
+     * Returns the url in a canonical form that is used to identify the
+     * resource, e.g. as a cache key. The host is lower case and the port
+     * and leading slash of the selector are always present.
+     *
+     * @return The canonical url as string
+     */
+    public String getCanonicalString() {
+        String result = this.host.toLowerCase(Locale.ROOT) + ":" + this.port;
+
+        if (this.selector.startsWith("/")) {
+            result += this.selector;
+        } else {
+            result += "/" + this.selector;
+        }
+
+        return result;
+    }
+
     /* constructs the object and parses the url */
     public GopherUrl(String url) {
         this.host = url;
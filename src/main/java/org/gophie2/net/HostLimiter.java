@@ -0,0 +1,327 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.gophie2.config.ConfigurationManager;
+
+/**
+ * Limits the number of concurrent connections to each host and port. Excess
+ * requests are queued, page loads and downloads take turns when both are
+ * waiting and background requests only get a slot when neither is. The limit adapts to the host: it is halved when connecting fails
+ * or is slow and grows back slowly with every fast connect.
+ */
+public class HostLimiter {
+
+    /* default maximum of concurrent connections per host */
+    private static final int DEFAULT_MAX_CONNECTIONS = 4;
+
+    /* connects slower than this and the factor over the fastest seen
+        connect of the host are considered a sign of an overloaded host */
+    private static final long SLOW_CONNECT_MILLIS = 250;
+    private static final int SLOW_CONNECT_FACTOR = 4;
+
+    private static HostLimiter defaultLimiter;
+
+    /**
+     * The queues connections wait in
+     */
+    public enum Lane {
+        /* pages the user asked for */
+        PAGE,
+        /* downloads of files */
+        DOWNLOAD,
+        /* speculative requests such as prefetches */
+        BACKGROUND
+    }
+
+    private final int maximumConnections;
+    private final Map<String, Host> hosts;
+
+    /**
+     * Returns the shared limiter used by all transports
+     *
+     * @return The shared HostLimiter
+     */
+    public static synchronized HostLimiter getDefault() {
+        if (defaultLimiter == null) {
+            defaultLimiter = new HostLimiter(ConfigurationManager.getConfigFile()
+                    .getInt("Network", "MAX_CONNECTIONS_PER_HOST", DEFAULT_MAX_CONNECTIONS));
+        }
+        return defaultLimiter;
+    }
+
+    /**
+     * Constructs a limiter
+     *
+     * @param maximumConnections Upper bound of concurrent connections per host
+     */
+    public HostLimiter(int maximumConnections) {
+        this.maximumConnections = Math.max(1, maximumConnections);
+        this.hosts = new HashMap<>();
+    }
+
+    /**
+     * Creates a ticket for a connection to the host of the url, the ticket
+     * is queued once it is started
+     *
+     * @param url The url to connect to
+     *
+     * @param lane The queue the connection waits in
+     *
+     * @return The ticket for the connection
+     */
+    public Ticket createTicket(GopherUrl url, Lane lane) {
+        return new Ticket(url.getHost().toLowerCase() + ":" + url.getPort(), lane);
+    }
+
+    /**
+     * Queues the ticket and grants the slots that became available
+     */
+    private void enqueue(Ticket ticket) {
+        List<Ticket> granted;
+        synchronized (this) {
+            Host host = hosts.get(ticket.hostKey);
+            if (host == null) {
+                host = new Host();
+                hosts.put(ticket.hostKey, host);
+            }
+            host.queue(ticket.lane).add(ticket);
+            granted = dispatch(ticket.hostKey, host);
+        }
+        grant(granted);
+    }
+
+    /**
+     * Frees the slot or the queue entry of the ticket
+     */
+    private void release(Ticket ticket) {
+        List<Ticket> granted;
+        synchronized (this) {
+            Host host = hosts.get(ticket.hostKey);
+            if (host == null) {
+                return;
+            }
+            if (ticket.granted) {
+                host.active--;
+            } else {
+                host.queue(ticket.lane).remove(ticket);
+            }
+            granted = dispatch(ticket.hostKey, host);
+        }
+        grant(granted);
+    }
+
+    /**
+     * Adapts the limit of the host to the result of a connect
+     */
+    private synchronized void connected(Ticket ticket, boolean success, long connectMillis) {
+        Host host = hosts.get(ticket.hostKey);
+        if (host == null) {
+            return;
+        }
+
+        if (success) {
+            host.fastestConnect = Math.min(host.fastestConnect, connectMillis);
+        }
+
+        boolean slow = connectMillis > SLOW_CONNECT_MILLIS
+                && connectMillis > host.fastestConnect * SLOW_CONNECT_FACTOR;
+        if (!success || slow) {
+            /* multiplicative decrease */
+            host.limit = Math.max(1, host.limit / 2);
+        } else {
+            /* additive increase of one connection per full window */
+            host.limit = Math.min(maximumConnections, host.limit + 1 / host.limit);
+        }
+    }
+
+    /**
+     * Takes tickets from the queues while the host has free slots, page
+     * loads and downloads take turns, background requests come last
+     *
+     * @return The tickets that were granted a slot
+     */
+    private List<Ticket> dispatch(String hostKey, Host host) {
+        List<Ticket> result = new ArrayList<>();
+        while (host.active < (int) host.limit) {
+            Ticket ticket;
+            if (!(host.pageQueue.isEmpty() && host.downloadQueue.isEmpty())) {
+                boolean download = host.pageQueue.isEmpty()
+                        || (host.downloadTurn && !host.downloadQueue.isEmpty());
+                ticket = host.queue(download ? Lane.DOWNLOAD : Lane.PAGE).poll();
+                host.downloadTurn = !download;
+            } else if (!host.backgroundQueue.isEmpty() && host.active < Math.max(1, (int) host.limit - 1)) {
+                /* background requests leave a slot free for the user */
+                ticket = host.backgroundQueue.poll();
+            } else {
+                break;
+            }
+            host.active++;
+            ticket.granted = true;
+            result.add(ticket);
+        }
+
+        /* forget hosts that are idle and fully recovered */
+        if (host.active == 0 && host.pageQueue.isEmpty() && host.downloadQueue.isEmpty()
+                && host.backgroundQueue.isEmpty() && host.limit >= maximumConnections) {
+            hosts.remove(hostKey);
+        }
+        return result;
+    }
+
+    private static void grant(List<Ticket> granted) {
+        for (Ticket ticket : granted) {
+            ticket.grantTime = System.currentTimeMillis();
+            ticket.onGranted.run();
+        }
+    }
+
+    /**
+     * Connection state of a single host
+     */
+    private class Host {
+
+        private final ArrayDeque<Ticket> pageQueue = new ArrayDeque<>();
+        private final ArrayDeque<Ticket> downloadQueue = new ArrayDeque<>();
+        private final ArrayDeque<Ticket> backgroundQueue = new ArrayDeque<>();
+        private double limit = maximumConnections;
+        private int active = 0;
+        private long fastestConnect = Long.MAX_VALUE;
+        private boolean downloadTurn = false;
+
+        ArrayDeque<Ticket> queue(Lane lane) {
+            switch (lane) {
+                case DOWNLOAD:
+                    return downloadQueue;
+                case BACKGROUND:
+                    return backgroundQueue;
+                default:
+                    return pageQueue;
+            }
+        }
+    }
+
+    /**
+     * Permission to open one connection to a host. The ticket must be
+     * released once the connection is closed or no longer wanted.
+     */
+    public class Ticket {
+
+        private final String hostKey;
+        private final Lane lane;
+        private Runnable onGranted;
+        private boolean started;
+        private boolean released;
+        private CountDownLatch waiting;
+
+        /* guarded by the limiter */
+        private boolean granted;
+        private volatile long grantTime;
+
+        private Ticket(String hostKey, Lane lane) {
+            this.hostKey = hostKey;
+            this.lane = lane;
+        }
+
+        /**
+         * Queues the ticket, the callback is executed once a connection
+         * slot is available, possibly right away on the calling thread
+         *
+         * @param onGranted Callback that opens the connection
+         */
+        public void start(Runnable onGranted) {
+            synchronized (this) {
+                if (started || released) {
+                    return;
+                }
+                started = true;
+                this.onGranted = onGranted;
+            }
+            enqueue(this);
+        }
+
+        /**
+         * Queues the ticket and blocks until a connection slot is available
+         *
+         * @throws InterruptedException when interrupted while waiting
+         */
+        public void await() throws InterruptedException {
+            CountDownLatch latch = new CountDownLatch(1);
+            synchronized (this) {
+                waiting = latch;
+            }
+            start(latch::countDown);
+            try {
+                latch.await();
+            } catch (InterruptedException ex) {
+                release();
+                throw ex;
+            }
+
+            synchronized (this) {
+                if (released) {
+                    throw new InterruptedException("Connection is no longer wanted");
+                }
+            }
+        }
+
+        /**
+         * Reports that the connection was established
+         */
+        public void connected() {
+            HostLimiter.this.connected(this, true, System.currentTimeMillis() - grantTime);
+        }
+
+        /**
+         * Reports that the connection could not be established
+         */
+        public void connectFailed() {
+            HostLimiter.this.connected(this, false, System.currentTimeMillis() - grantTime);
+        }
+
+        /**
+         * Frees the connection slot or removes the ticket from the queue,
+         * calling it more than once has no effect
+         */
+        public void release() {
+            boolean queued;
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                queued = started;
+            }
+            if (queued) {
+                HostLimiter.this.release(this);
+            }
+
+            /* wake up a thread still waiting for the slot */
+            if (waiting != null) {
+                waiting.countDown();
+            }
+        }
+    }
+}
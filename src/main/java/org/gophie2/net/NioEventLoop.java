@@ -0,0 +1,373 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Single threaded selector loop that multiplexes all connections of the
+ * NioTransport. Name resolution and result callbacks are handed off to a
+ * small worker pool so that they never block the loop.
+ */
+final class NioEventLoop implements Runnable {
+
+    /* size of the read buffer shared by all channels of this loop */
+    private static final int READ_BUFFER_SIZE = 16384;
+
+    /* time to wait for a connection before giving up */
+    private static final long CONNECT_TIMEOUT_MILLIS = 30000;
+
+    /* time a server may send nothing before the exchange fails */
+    private static final long READ_TIMEOUT_MILLIS = 60000;
+
+    /* number of workers for name resolution and callbacks */
+    private static final int WORKER_THREADS = 4;
+
+    /* maximum time to block in select before checking timeouts */
+    private static final long SELECT_TIMEOUT_MILLIS = 1000;
+
+    private static NioEventLoop defaultLoop;
+
+    private final Selector selector;
+    private final ByteBuffer readBuffer;
+    private final ExecutorService workers;
+    private final Queue<NioExchange> pending;
+    private final Queue<NioExchange> cancelled;
+    private final Queue<NioExchange> resumed;
+
+    /* exchanges paused by their bandwidth limit and the time
+        to resume them, only touched by the selector thread */
+    private final Map<NioExchange, Long> throttled;
+
+    /**
+     * Returns the shared event loop, starting it when required
+     *
+     * @return The shared NioEventLoop
+     *
+     * @throws IOException when the selector cannot be opened
+     */
+    static synchronized NioEventLoop getDefault() throws IOException {
+        if (defaultLoop == null) {
+            defaultLoop = new NioEventLoop();
+        }
+        return defaultLoop;
+    }
+
+    private NioEventLoop() throws IOException {
+        selector = Selector.open();
+        readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        pending = new ConcurrentLinkedQueue<>();
+        cancelled = new ConcurrentLinkedQueue<>();
+        resumed = new ConcurrentLinkedQueue<>();
+        throttled = new HashMap<>();
+
+        /* workers for name resolution and listener callbacks */
+        workers = TransportExecutors.create("gophie-nio-worker", WORKER_THREADS);
+
+        Thread thread = new Thread(this, "gophie-nio-selector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Resolves the exchange's address on a worker and then hands it over to
+     * the selector thread as soon as the host limiter grants a connection
+     *
+     * @param exchange The exchange to execute
+     */
+    void submit(NioExchange exchange) {
+        exchange.setWorkers(workers);
+        workers.execute(() -> {
+            try {
+                exchange.prepare();
+                exchange.getTicket().start(() -> {
+                    pending.add(exchange);
+                    selector.wakeup();
+                });
+            } catch (IOException ex) {
+                finish(exchange, NioExchange.translate(ex));
+            }
+        });
+    }
+
+    /**
+     * Aborts the exchange, the channel is closed by the selector thread
+     *
+     * @param exchange The exchange to cancel
+     */
+    void cancel(NioExchange exchange) {
+        exchange.setCancelled();
+        cancelled.add(exchange);
+        selector.wakeup();
+    }
+
+    /**
+     * Continues reading for an exchange that paused reading
+     *
+     * @param exchange The exchange to resume
+     */
+    void resume(NioExchange exchange) {
+        resumed.add(exchange);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                selector.select(getSelectTimeout());
+                registerPending();
+                closeCancelled();
+                resumeReading();
+                resumeThrottled();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+
+                checkTimeouts();
+            } catch (IOException ex) {
+                /* selector failures should never happen, just report it */
+                System.out.println("NIO selector loop failed: " + ex.getMessage());
+            }
+        }
+    }
+
+    private void registerPending() {
+        NioExchange exchange;
+        while ((exchange = pending.poll()) != null) {
+            if (exchange.isCancelled()) {
+                exchange.getTicket().release();
+                exchange.close();
+                continue;
+            }
+
+            try {
+                SocketChannel channel = SocketChannel.open();
+                exchange.setChannel(channel);
+                channel.configureBlocking(false);
+                exchange.setDeadline(System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS);
+
+                /* local connections might succeed immediately */
+                if (channel.connect(exchange.getAddress())) {
+                    exchange.getTicket().connected();
+                    extendDeadline(exchange);
+                    channel.register(selector, SelectionKey.OP_WRITE, exchange);
+                } else {
+                    channel.register(selector, SelectionKey.OP_CONNECT, exchange);
+                }
+            } catch (IOException ex) {
+                fail(exchange, ex);
+            }
+        }
+    }
+
+    private void closeCancelled() {
+        NioExchange exchange;
+        while ((exchange = cancelled.poll()) != null) {
+            closeChannel(exchange);
+            exchange.close();
+        }
+    }
+
+    private void resumeReading() {
+        NioExchange exchange;
+        while ((exchange = resumed.poll()) != null) {
+            SocketChannel channel = exchange.getChannel();
+            SelectionKey key = channel != null ? channel.keyFor(selector) : null;
+
+            /* only a paused key has no interest at all */
+            if (key != null && key.isValid() && key.interestOps() == 0) {
+                if (exchange.wantsRead()) {
+                    /* the server was not asked for data while paused */
+                    extendDeadline(exchange);
+                    key.interestOps(SelectionKey.OP_READ);
+                } else {
+                    throttle(exchange);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns how long select may block, throttled exchanges
+     * have to be resumed in time
+     */
+    private long getSelectTimeout() {
+        long timeout = SELECT_TIMEOUT_MILLIS;
+        long now = System.currentTimeMillis();
+        for (long resumeTime : throttled.values()) {
+            timeout = Math.min(timeout, Math.max(1, resumeTime - now));
+        }
+        return timeout;
+    }
+
+    private void resumeThrottled() {
+        if (throttled.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<NioExchange, Long>> entries = throttled.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<NioExchange, Long> entry = entries.next();
+            if (entry.getValue() <= now) {
+                entries.remove();
+                resumed.add(entry.getKey());
+            }
+        }
+        resumeReading();
+    }
+
+    /**
+     * Resumes a paused exchange later when it asks for it
+     */
+    private void throttle(NioExchange exchange) {
+        long delay = exchange.getReadDelayMillis();
+        if (delay > 0) {
+            throttled.put(exchange, System.currentTimeMillis() + delay);
+        }
+    }
+
+    private void extendDeadline(NioExchange exchange) {
+        exchange.setDeadline(System.currentTimeMillis() + READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Fails the exchanges whose server did not connect or sent nothing
+     * in time, paused exchanges are not waiting for the server
+     */
+    private void checkTimeouts() {
+        long now = System.currentTimeMillis();
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && key.interestOps() != 0) {
+                NioExchange exchange = (NioExchange) key.attachment();
+                if (now > exchange.getDeadline()) {
+                    String operation = (key.interestOps() & SelectionKey.OP_CONNECT) != 0 ? "connect" : "read";
+                    fail(exchange, new SocketTimeoutException(operation + " timed out: " + exchange.getUrl().getHost()));
+                }
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        NioExchange exchange = (NioExchange) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+
+            if (key.isConnectable()) {
+                /* connection established, send the selector next */
+                if (channel.finishConnect()) {
+                    exchange.getTicket().connected();
+                    extendDeadline(exchange);
+                    key.interestOps(SelectionKey.OP_WRITE);
+                }
+            } else if (key.isWritable()) {
+                /* write the request and wait for the response */
+                channel.write(exchange.getRequest());
+                extendDeadline(exchange);
+                if (!exchange.getRequest().hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } else if (key.isReadable()) {
+                extendDeadline(exchange);
+                if (exchange.wantsRead() && exchange.readFrom(channel, readBuffer) == -1) {
+                    /* server closed the connection, response is complete */
+                    closeChannel(exchange);
+                    finish(exchange, null);
+                } else if (!exchange.wantsRead()) {
+                    /* pause until the exchange resumes, the data waits
+                        in the socket buffer and the server has to wait */
+                    key.interestOps(0);
+                    throttle(exchange);
+                }
+            }
+        } catch (IOException ex) {
+            fail(exchange, ex);
+        }
+    }
+
+    private void fail(NioExchange exchange, Exception ex) {
+        /* failing to connect tells the limiter the host is struggling */
+        SocketChannel channel = exchange.getChannel();
+        if (channel != null && channel.isOpen() && !channel.isConnected()) {
+            exchange.getTicket().connectFailed();
+        }
+        closeChannel(exchange);
+        finish(exchange, NioExchange.translate(ex));
+    }
+
+    /**
+     * Reports the result of the exchange on a worker thread after the
+     * callbacks for the data it received
+     *
+     * @param exchange The exchange that finished
+     *
+     * @param error The error or null when completed successfully
+     */
+    private void finish(NioExchange exchange, GopherNetworkException error) {
+        exchange.dispatch(() -> {
+            try {
+                if (!exchange.isCancelled()) {
+                    if (error == null) {
+                        exchange.completed();
+                    } else {
+                        exchange.failed(error);
+                    }
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    private void closeChannel(NioExchange exchange) {
+        /* the connection slot is free once the channel is gone */
+        exchange.getTicket().release();
+        throttled.remove(exchange);
+
+        SocketChannel channel = exchange.getChannel();
+        if (channel != null) {
+            try {
+                /* closing the channel also cancels its selection key */
+                channel.close();
+            } catch (IOException ex) {
+                /* nothing left to do with this channel anyway */
+                System.out.println("Failed to close channel: " + ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.gophie2.net.event.TransportEventListener;
+
+/**
+ * A single request/response exchange handled by the NioEventLoop. The loop
+ * owns the channel, subclasses decide what happens with the received bytes
+ * and how the result is reported. Listener callbacks and the result are
+ * dispatched to the workers of the loop one after the other, so a slow
+ * listener never holds up the loop.
+ */
+abstract class NioExchange {
+
+    /* the url and the request bytes sent to the server */
+    private final GopherUrl url;
+    private final ByteBuffer request;
+    private final TransportEventListener eventListener;
+
+    /* resolved address of the server, set by prepare() */
+    private InetSocketAddress address;
+
+    /* channel and state, only touched by the event loop */
+    private SocketChannel channel;
+    private long deadline;
+    private long byteCount;
+
+    /* callbacks waiting for the workers and whether one runs them */
+    private final Queue<Runnable> callbacks;
+    private final AtomicBoolean dispatching;
+    private volatile Executor workers;
+
+    /* connection slot granted by the host limiter */
+    private final HostLimiter.Ticket ticket;
+
+    /* set by any thread to abort the exchange */
+    private volatile boolean cancelled;
+
+    NioExchange(GopherUrl url, TransportEventListener eventListener, HostLimiter.Lane lane) {
+        this.url = url;
+        this.eventListener = eventListener;
+        this.ticket = HostLimiter.getDefault().createTicket(url, lane);
+        this.request = ByteBuffer.wrap((url.getSelector() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        this.cancelled = false;
+        this.byteCount = 0;
+        this.callbacks = new ConcurrentLinkedQueue<>();
+        this.dispatching = new AtomicBoolean(false);
+    }
+
+    GopherUrl getUrl() {
+        return url;
+    }
+
+    TransportEventListener getEventListener() {
+        return eventListener;
+    }
+
+    HostLimiter.Ticket getTicket() {
+        return ticket;
+    }
+
+    ByteBuffer getRequest() {
+        return request;
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    void setChannel(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Returns the time the pending connect or read has to complete by
+     *
+     * @return The deadline in milliseconds
+     */
+    long getDeadline() {
+        return deadline;
+    }
+
+    void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    void setWorkers(Executor workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Runs a callback on the workers after all callbacks dispatched
+     * before it, the callbacks of an exchange never run concurrently
+     *
+     * @param callback The callback to run
+     */
+    void dispatch(Runnable callback) {
+        callbacks.add(callback);
+        if (dispatching.compareAndSet(false, true)) {
+            workers.execute(this::runCallbacks);
+        }
+    }
+
+    private void runCallbacks() {
+        do {
+            Runnable callback;
+            while ((callback = callbacks.poll()) != null) {
+                try {
+                    callback.run();
+                } catch (RuntimeException ex) {
+                    /* a broken listener must not stop the other callbacks */
+                    System.out.println("Exchange callback failed: " + ex.getMessage());
+                }
+            }
+            dispatching.set(false);
+
+            /* another callback might have arrived after the queue was empty */
+        } while (!callbacks.isEmpty() && dispatching.compareAndSet(false, true));
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    void setCancelled() {
+        cancelled = true;
+    }
+
+    /**
+     * Resolves the host name and acquires any local resources. This is
+     * executed on a worker thread as name resolution may block.
+     *
+     * @throws IOException when the host is unknown or resources fail to open
+     */
+    void prepare() throws IOException {
+        address = new InetSocketAddress(url.getHost(), url.getPort());
+        if (address.isUnresolved()) {
+            throw new UnknownHostException(url.getHost());
+        }
+    }
+
+    /**
+     * Consumes the bytes that were just read from the channel and reports the
+     * progress to the listener
+     *
+     * @param buffer Buffer in read mode with the received bytes
+     *
+     * @throws IOException when the bytes cannot be stored
+     */
+    void read(ByteBuffer buffer) throws IOException {
+        long count = buffer.remaining();
+        received(buffer);
+        transferred(count);
+    }
+
+    /**
+     * Reads the available bytes from the channel when it became readable
+     *
+     * @param channel The channel of this exchange
+     *
+     * @param buffer The read buffer of the event loop
+     *
+     * @return The number of bytes read or -1 when the server closed the
+     * connection
+     *
+     * @throws IOException when reading or storing the bytes failed
+     */
+    long readFrom(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        int count = channel.read(buffer);
+        if (count > 0) {
+            buffer.flip();
+            read(buffer);
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether the exchange wants to read more right now, the event
+     * loop stops reading from the channel until the exchange is resumed
+     *
+     * @return true to keep reading
+     */
+    boolean wantsRead() {
+        return true;
+    }
+
+    /**
+     * Returns the time until a paused exchange wants to read again, the
+     * event loop resumes it then. Exchanges that resume themselves return 0.
+     *
+     * @return The delay in milliseconds or 0
+     */
+    long getReadDelayMillis() {
+        return 0;
+    }
+
+    /**
+     * Adds the bytes received to the byte count and reports the progress
+     * to the listener on the workers
+     *
+     * @param count Number of bytes just received
+     */
+    void transferred(long count) {
+        byteCount += count;
+        if (eventListener != null) {
+            long total = byteCount;
+            dispatch(() -> {
+                if (!cancelled) {
+                    eventListener.progress(url, total);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stores the received bytes, the buffer is reused once this returns
+     *
+     * @param buffer Buffer in read mode with the received bytes
+     *
+     * @throws IOException when the bytes cannot be stored
+     */
+    abstract void received(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Called once the server closed the connection
+     */
+    abstract void completed();
+
+    /**
+     * Called when the exchange failed for whatever reason
+     *
+     * @param ex The exception with the gopher error type
+     */
+    abstract void failed(GopherNetworkException ex);
+
+    /**
+     * Releases local resources, called after completed or failed
+     */
+    void close() {
+        /* nothing to release by default */
+    }
+
+    /**
+     * Translates an exception into the gopher network exception used by the
+     * listeners and the synchronous fetch method
+     *
+     * @param ex The exception raised while processing
+     *
+     * @return GopherNetworkException with the matching error type
+     */
+    static GopherNetworkException translate(Exception ex) {
+        if (ex instanceof GopherNetworkException) {
+            return (GopherNetworkException) ex;
+        }
+        if (ex instanceof UnknownHostException || ex instanceof UnresolvedAddressException) {
+            return new GopherNetworkException(Error.HOST_UNKNOWN, ex.getMessage());
+        }
+        if (ex instanceof ConnectException) {
+            return new GopherNetworkException(Error.CONNECT_FAILED, ex.getMessage());
+        }
+        if (ex instanceof SocketTimeoutException) {
+            return new GopherNetworkException(Error.CONNECTION_TIMEOUT, ex.getMessage());
+        }
+        return new GopherNetworkException(Error.EXCEPTION, ex.getMessage());
+    }
+}
@@ -0,0 +1,311 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.gophie2.net.event.BodySubscriber;
+import org.gophie2.net.event.TransportEventListener;
+
+/**
+ * Transport implementation that runs all page fetches and downloads on the
+ * shared non-blocking NioEventLoop instead of one thread per request
+ */
+public class NioTransport implements Transport {
+
+    /* queue page fetches wait in for a connection to the host */
+    private final HostLimiter.Lane lane;
+
+    /* the request started last, cancelled by cancel() */
+    private volatile TransportRequest<?> current;
+
+    public NioTransport() {
+        this(false);
+    }
+
+    /**
+     * Constructs the transport
+     *
+     * @param background true when the pages fetched are not requested by
+     * the user, they then only connect when no other request is waiting
+     */
+    public NioTransport(boolean background) {
+        this.lane = background ? HostLimiter.Lane.BACKGROUND : HostLimiter.Lane.PAGE;
+    }
+
+    @Override
+    public void cancel() {
+        TransportRequest<?> request = current;
+        if (request != null) {
+            request.cancel(true);
+        }
+    }
+
+    /**
+     * Hands the exchange over to the event loop, cancelling its request
+     * aborts the exchange
+     *
+     * @param value The exchange to start
+     *
+     * @param request The request the exchange completes
+     */
+    private <T> TransportRequest<T> start(NioExchange value, TransportRequest<T> request) {
+        current = request;
+        try {
+            NioEventLoop loop = NioEventLoop.getDefault();
+            request.onAbort(() -> loop.cancel(value));
+            loop.submit(value);
+        } catch (IOException ex) {
+            value.failed(NioExchange.translate(ex));
+            value.close();
+        }
+        return request;
+    }
+
+    @Override
+    public TransportRequest<Void> downloadAsync(String url, String targetFile, TransportEventListener eventListener, BandwidthLimiter bandwidthLimiter) {
+        GopherUrl gopherUrl = new GopherUrl(url);
+        TransportRequest<Void> request = new TransportRequest<>();
+        request.reportTo(eventListener, gopherUrl);
+        return start(new DownloadExchange(gopherUrl, targetFile, eventListener, bandwidthLimiter, request), request);
+    }
+
+    @Override
+    public TransportRequest<GopherMenu> fetchAsync(String url, GopherMenuItemType contentType, TransportEventListener eventListener) {
+        GopherUrl gopherUrl = new GopherUrl(url);
+        TransportRequest<GopherMenu> request = new TransportRequest<>();
+        request.reportTo(eventListener, gopherUrl);
+        return start(new FetchExchange(gopherUrl, contentType, eventListener, request, lane), request);
+    }
+
+    @Override
+    public TransportRequest<Void> streamAsync(String url, BodySubscriber subscriber) {
+        TransportRequest<Void> request = new TransportRequest<>();
+        BodyStream stream = new BodyStream(subscriber, request);
+        stream.start();
+        return start(new StreamExchange(new GopherUrl(url), stream, lane), request);
+    }
+
+    @Override
+    public GopherMenu fetch(String url, GopherMenuItemType contentType, TransportEventListener eventListener) throws GopherNetworkException {
+        GopherUrl gopherUrl = new GopherUrl(url);
+        TransportRequest<GopherMenu> request = new TransportRequest<>();
+        return start(new FetchExchange(gopherUrl, contentType, eventListener, request, lane), request).await();
+    }
+
+    /**
+     * Exchange that collects the response in memory and creates a GopherMenu
+     */
+    private static class FetchExchange extends NioExchange {
+
+        private final GopherMenuBuilder builder;
+        private final TransportRequest<GopherMenu> request;
+
+        FetchExchange(GopherUrl url, GopherMenuItemType contentType, TransportEventListener eventListener, TransportRequest<GopherMenu> request, HostLimiter.Lane lane) {
+            super(url, eventListener, lane);
+            this.builder = new GopherMenuBuilder(url, contentType, eventListener);
+            this.request = request;
+        }
+
+        @Override
+        void received(ByteBuffer data) {
+            /* the builder reports to the listener, so it is fed on
+                the workers with a copy of the shared read buffer */
+            byte[] chunk = new byte[data.remaining()];
+            data.get(chunk);
+            dispatch(() -> {
+                builder.write(chunk, 0, chunk.length);
+                if (!isCancelled()) {
+                    builder.reportItems();
+                    builder.reportText();
+                    builder.reportImageData();
+                }
+            });
+        }
+
+        @Override
+        void completed() {
+            request.complete(builder.build());
+        }
+
+        @Override
+        void failed(GopherNetworkException ex) {
+            request.fail(ex);
+        }
+
+        @Override
+        void close() {
+            /* an exchange closed without result was aborted */
+            request.fail(new GopherNetworkException(Error.USER_CANCELLED, "Fetch was cancelled"));
+        }
+    }
+
+    /**
+     * Exchange that passes the response on to a body subscriber in chunks
+     * and stops reading from the socket while the subscriber has no demand
+     */
+    private static class StreamExchange extends NioExchange {
+
+        private final BodyStream stream;
+
+        StreamExchange(GopherUrl url, BodyStream stream, HostLimiter.Lane lane) {
+            super(url, null, lane);
+            this.stream = stream;
+        }
+
+        @Override
+        void prepare() throws IOException {
+            super.prepare();
+            NioEventLoop loop = NioEventLoop.getDefault();
+            stream.onDemand(() -> loop.resume(this));
+        }
+
+        @Override
+        boolean wantsRead() {
+            return stream.hasDemand();
+        }
+
+        @Override
+        void received(ByteBuffer data) {
+            /* the chunk is handed over, the read buffer is reused */
+            ByteBuffer chunk = ByteBuffer.allocate(data.remaining());
+            chunk.put(data);
+            chunk.flip();
+            stream.next(chunk);
+        }
+
+        @Override
+        void completed() {
+            stream.complete();
+        }
+
+        @Override
+        void failed(GopherNetworkException ex) {
+            stream.error(ex);
+        }
+    }
+
+    /**
+     * Exchange that writes the response to the target file from the direct
+     * read buffer of the event loop, reading pauses while the bandwidth
+     * limiter has no bytes available
+     */
+    private static class DownloadExchange extends NioExchange {
+
+        private final String targetFile;
+        private final BandwidthLimiter bandwidthLimiter;
+        private final TransportRequest<Void> request;
+        private FileChannel fileChannel;
+        private long position;
+
+        DownloadExchange(GopherUrl url, String targetFile, TransportEventListener eventListener, BandwidthLimiter bandwidthLimiter, TransportRequest<Void> request) {
+            super(url, eventListener, HostLimiter.Lane.DOWNLOAD);
+            this.targetFile = targetFile;
+            this.bandwidthLimiter = bandwidthLimiter;
+            this.request = request;
+        }
+
+        @Override
+        void prepare() throws IOException {
+            super.prepare();
+            fileChannel = FileChannel.open(new File(targetFile).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        @Override
+        long readFrom(SocketChannel channel, ByteBuffer buffer) throws IOException {
+            /* the bytes still pass through user space, there is no socket
+                to file path in the jdk, but the buffer is direct, so the
+                channels need no temporary buffer of their own */
+            buffer.clear();
+            buffer.limit((int) bandwidthLimiter.getAvailable(buffer.capacity()));
+            int count = channel.read(buffer);
+            if (count > 0) {
+                bandwidthLimiter.consume(count);
+                buffer.flip();
+                read(buffer);
+            }
+            return count;
+        }
+
+        @Override
+        boolean wantsRead() {
+            return bandwidthLimiter.getDelayMillis() == 0;
+        }
+
+        @Override
+        long getReadDelayMillis() {
+            /* tokens may have come in since reading paused,
+                resuming the next round is then just fine */
+            return Math.max(1, bandwidthLimiter.getDelayMillis());
+        }
+
+        @Override
+        void received(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                position += fileChannel.write(data, position);
+            }
+        }
+
+        @Override
+        void completed() {
+            /* make sure everything is on disk before reporting */
+            closeFile();
+            request.complete(null);
+        }
+
+        @Override
+        void failed(GopherNetworkException ex) {
+            /* log the exception message */
+            System.out.println("Download failed (" + getUrl().getUrlString() + "):" + ex.getGopherErrorMessage());
+
+            /* remove the file if already created */
+            closeFile();
+            File createdFile = new File(targetFile);
+            if (createdFile.exists()) {
+                createdFile.delete();
+            }
+
+            request.fail(ex);
+        }
+
+        @Override
+        void close() {
+            /* an exchange closed without result was aborted */
+            request.fail(new GopherNetworkException(Error.USER_CANCELLED, "Download was cancelled"));
+            closeFile();
+        }
+
+        private synchronized void closeFile() {
+            if (fileChannel != null) {
+                try {
+                    fileChannel.close();
+                } catch (IOException ex) {
+                    System.out.println("Failed to close download file: " + ex.getMessage());
+                }
+                fileChannel = null;
+            }
+        }
+    }
+}
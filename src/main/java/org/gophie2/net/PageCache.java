@@ -0,0 +1,158 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.gophie2.config.ConfigFile;
+import org.gophie2.config.ConfigurationManager;
+
+/**
+ * Memory bound least recently used cache for fetched gopher pages, keyed by
+ * the canonical url and the requested content type
+ */
+public class PageCache {
+
+    /* default memory budget in megabytes and time to live in seconds */
+    private static final int DEFAULT_CACHE_SIZE = 32;
+    private static final int DEFAULT_CACHE_TTL = 600;
+
+    public static final PageCache INSTANCE = new PageCache();
+
+    private final LinkedHashMap<String, Entry> entries;
+    private final long maximumSize;
+    private final long timeToLiveMillis;
+    private long currentSize;
+
+    private PageCache() {
+        this(ConfigurationManager.getConfigFile());
+    }
+
+    private PageCache(ConfigFile configFile) {
+        this((long) configFile.getInt("Network", "PAGE_CACHE_SIZE", DEFAULT_CACHE_SIZE) * 1024 * 1024,
+                configFile.getInt("Network", "PAGE_CACHE_TTL", DEFAULT_CACHE_TTL) * 1000L);
+    }
+
+    /**
+     * Constructs a page cache
+     *
+     * @param maximumSize Memory budget of the cache in bytes
+     *
+     * @param timeToLiveMillis Time in milliseconds a page stays valid
+     */
+    public PageCache(long maximumSize, long timeToLiveMillis) {
+        /* access order turns the map into a lru list */
+        this.entries = new LinkedHashMap<>(64, 0.75f, true);
+        this.maximumSize = maximumSize;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.currentSize = 0;
+    }
+
+    /**
+     * Returns the cached page if present and not expired
+     *
+     * @param url The url of the page
+     *
+     * @param contentType The content type requested for the page
+     *
+     * @return The cached page or null when not cached
+     */
+    public synchronized GopherMenu get(GopherUrl url, GopherMenuItemType contentType) {
+        String key = createKey(url, contentType);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.expires < System.currentTimeMillis()) {
+            /* entry is too old, drop it */
+            entries.remove(key);
+            currentSize -= entry.size;
+            return null;
+        }
+
+        return entry.page;
+    }
+
+    /**
+     * Stores a page in the cache, evicting the least recently used pages
+     * when the memory budget is exceeded
+     *
+     * @param url The url the page was requested with
+     *
+     * @param contentType The content type the page was requested with
+     *
+     * @param page The page to store
+     */
+    public synchronized void put(GopherUrl url, GopherMenuItemType contentType, GopherMenu page) {
+        String key = createKey(url, contentType);
+        long size = page.getMemorySize();
+        if (size > maximumSize) {
+            /* never let one page flush the whole cache, but
+                do not keep serving an older version of it either */
+            Entry previous = entries.remove(key);
+            if (previous != null) {
+                currentSize -= previous.size;
+            }
+            return;
+        }
+
+        Entry previous = entries.put(key, new Entry(page, size, System.currentTimeMillis() + timeToLiveMillis));
+        if (previous != null) {
+            currentSize -= previous.size;
+        }
+        currentSize += size;
+
+        /* evict the least recently used pages */
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (currentSize > maximumSize && iterator.hasNext()) {
+            currentSize -= iterator.next().getValue().size;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Removes all cached pages
+     */
+    public synchronized void clear() {
+        entries.clear();
+        currentSize = 0;
+    }
+
+    static String createKey(GopherUrl url, GopherMenuItemType contentType) {
+        return contentType.getTypeCode() + url.getCanonicalString();
+    }
+
+    /**
+     * A cached page with its size and expiry time
+     */
+    private static class Entry {
+
+        private final GopherMenu page;
+        private final long size;
+        private final long expires;
+
+        Entry(GopherMenu page, long size, long expires) {
+            this.page = page;
+            this.size = size;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gophie2.config.ConfigFile;
+import org.gophie2.config.ConfigurationManager;
+import org.gophie2.net.event.TransportEventListener;
+
+/**
+ * Speculatively fetches the target of the link the user is hovering over
+ * into a small prefetch cache. Only one prefetch is pending at any time, it
+ * starts after a short delay and is abandoned as soon as the pointer moves
+ * on or a real navigation to another page starts. A navigation to the page
+ * being prefetched takes the prefetch over instead of loading it again.
+ */
+public class Prefetcher {
+
+    /* default delay before a prefetch starts in milliseconds */
+    private static final int DEFAULT_PREFETCH_DELAY = 300;
+
+    /* default number of concurrent prefetches per host */
+    private static final int DEFAULT_PREFETCH_PER_HOST = 1;
+
+    /* default size of the prefetch cache in megabytes */
+    private static final int DEFAULT_PREFETCH_CACHE_SIZE = 4;
+
+    /* prefetched pages not clicked within this time are dropped */
+    private static final long PREFETCH_TTL_MILLIS = 120000;
+
+    /* number of threads starting prefetches after their delay */
+    private static final int PREFETCH_THREADS = 1;
+
+    private final PageCache pageCache;
+    private final PageCache prefetchCache;
+    private final ScheduledExecutorService scheduler;
+    private final Transport transport;
+    private final Map<String, Integer> hostCount;
+    private final long delayMillis;
+    private final int maximumPerHost;
+
+    private Prefetch current;
+
+    /**
+     * Constructs the prefetcher
+     *
+     * @param pageCache The page cache, pages in it are not prefetched
+     */
+    public Prefetcher(PageCache pageCache) {
+        ConfigFile configFile = ConfigurationManager.getConfigFile();
+        this.pageCache = pageCache;
+        this.prefetchCache = new PageCache((long) configFile.getInt("Network", "PREFETCH_CACHE_SIZE",
+                DEFAULT_PREFETCH_CACHE_SIZE) * 1024 * 1024, PREFETCH_TTL_MILLIS);
+        this.delayMillis = configFile.getInt("Network", "PREFETCH_DELAY", DEFAULT_PREFETCH_DELAY);
+        this.maximumPerHost = configFile.getInt("Network", "PREFETCH_PER_HOST", DEFAULT_PREFETCH_PER_HOST);
+        this.hostCount = new HashMap<>();
+        /* prefetches must never compete with what the user asked for,
+            so their connections wait in the background queue of the host */
+        this.transport = TransportFactory.createBackground();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(PREFETCH_THREADS, (Runnable runnable) -> {
+            Thread thread = new Thread(runnable, "gophie-prefetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.setRemoveOnCancelPolicy(true);
+        this.scheduler = pool;
+    }
+
+    /**
+     * Schedules a prefetch of the link target and abandons any prefetch
+     * that is still pending
+     *
+     * @param url The url of the link target
+     *
+     * @param contentType The content type of the link target
+     */
+    public synchronized void prefetch(String url, GopherMenuItemType contentType) {
+        cancel();
+
+        /* only gopher menus and text files are worth prefetching */
+        if (maximumPerHost <= 0 || contentType.isBinary()
+                || (contentType != GopherMenuItemType.GOPHERMENU && contentType != GopherMenuItemType.TEXTFILE)
+                || !url.startsWith("gopher://")) {
+            return;
+        }
+
+        GopherUrl gopherUrl = new GopherUrl(url);
+        if (pageCache.get(gopherUrl, contentType) != null || prefetchCache.get(gopherUrl, contentType) != null) {
+            return;
+        }
+
+        current = new Prefetch(gopherUrl, contentType);
+        current.start();
+    }
+
+    /**
+     * Abandons the pending or running prefetch
+     */
+    public synchronized void cancel() {
+        if (current != null) {
+            current.cancel();
+            current = null;
+        }
+    }
+
+    /**
+     * Takes over the running prefetch of a page, it is no longer abandoned
+     * by cancel() and its result is stored in the page cache instead of
+     * the prefetch cache
+     *
+     * @param url The url of the requested page
+     *
+     * @param contentType The content type of the requested page
+     *
+     * @param eventListener The listener to report the result to, may be null
+     *
+     * @return Handle of the prefetch or null when the page is not being
+     * prefetched
+     */
+    public synchronized TransportRequest<GopherMenu> adopt(String url, GopherMenuItemType contentType, TransportEventListener eventListener) {
+        GopherUrl gopherUrl = new GopherUrl(url);
+        if (current == null || !current.matches(gopherUrl, contentType)) {
+            return null;
+        }
+
+        /* a prefetch still waiting for its delay is not worth waiting for */
+        TransportRequest<GopherMenu> running = current.adopt();
+        if (running == null) {
+            return null;
+        }
+        current = null;
+
+        TransportRequest<GopherMenu> result = new TransportRequest<>();
+        result.reportTo(eventListener, gopherUrl);
+        result.onAbort(() -> running.cancel(true));
+        running.whenComplete((page, error) -> {
+            if (error == null) {
+                pageCache.put(gopherUrl, contentType, page);
+                result.complete(page);
+            } else {
+                result.completeExceptionally(error);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Moves a prefetched page into the page cache so that the following
+     * request is answered from there
+     *
+     * @param url The url of the requested page
+     *
+     * @param contentType The content type of the requested page
+     *
+     * @return true when the page was prefetched
+     */
+    public boolean promote(String url, GopherMenuItemType contentType) {
+        GopherUrl gopherUrl = new GopherUrl(url);
+        GopherMenu page = prefetchCache.get(gopherUrl, contentType);
+        if (page == null) {
+            return false;
+        }
+        pageCache.put(gopherUrl, contentType, page);
+        return true;
+    }
+
+    private boolean acquireHost(String host) {
+        synchronized (hostCount) {
+            int count = hostCount.getOrDefault(host, 0);
+            if (count >= maximumPerHost) {
+                return false;
+            }
+            hostCount.put(host, count + 1);
+            return true;
+        }
+    }
+
+    private void releaseHost(String host) {
+        synchronized (hostCount) {
+            int count = hostCount.getOrDefault(host, 1) - 1;
+            if (count <= 0) {
+                hostCount.remove(host);
+            } else {
+                hostCount.put(host, count);
+            }
+        }
+    }
+
+    /**
+     * A single cancellable prefetch of a link target
+     */
+    private class Prefetch implements Runnable {
+
+        private final GopherUrl url;
+        private final GopherMenuItemType contentType;
+        private volatile boolean cancelled;
+        private volatile boolean adopted;
+        private volatile TransportRequest<GopherMenu> request;
+        private Future<?> future;
+
+        Prefetch(GopherUrl url, GopherMenuItemType contentType) {
+            this.url = url;
+            this.contentType = contentType;
+            this.cancelled = false;
+        }
+
+        boolean matches(GopherUrl url, GopherMenuItemType contentType) {
+            return this.url.getUrlString().equals(url.getUrlString()) && this.contentType == contentType;
+        }
+
+        /**
+         * Hands the running request over to a real navigation
+         *
+         * @return The request or null when it was not started yet
+         */
+        TransportRequest<GopherMenu> adopt() {
+            adopted = true;
+            TransportRequest<GopherMenu> running = request;
+            if (running == null) {
+                /* the prefetch is dropped and started no more */
+                cancel();
+            }
+            return running;
+        }
+
+        void start() {
+            future = scheduler.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        void cancel() {
+            cancelled = true;
+            future.cancel(false);
+            TransportRequest<GopherMenu> running = request;
+            if (running != null) {
+                running.cancel(true);
+            }
+        }
+
+        @Override
+        public void run() {
+            /* respect the limit of concurrent prefetches per host */
+            if (cancelled || adopted || !acquireHost(url.getHost())) {
+                return;
+            }
+
+            /* only waits for the connection, so the thread is free for
+                the next prefetch right away */
+            TransportRequest<GopherMenu> running = transport.fetchAsync(url.getUrlString(), contentType);
+            request = running;
+            running.whenComplete((result, error) -> {
+                releaseHost(url.getHost());
+                if (error == null && !cancelled && !adopted) {
+                    prefetchCache.put(url, contentType, result);
+                }
+                /* the real request reports errors, if ever made */
+            });
+            if (cancelled) {
+                running.cancel(true);
+            }
+        }
+    }
+}
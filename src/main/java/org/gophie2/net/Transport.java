@@ -16,6 +16,7 @@
  */
 package org.gophie2.net;
 
+import org.gophie2.net.event.BodySubscriber;
 import org.gophie2.net.event.TransportEventListener;
 
 /**
@@ -31,9 +32,29 @@ public interface Transport {
      *
      * @param targetFile The file to write the content to
      *
-     * @param eventListener Listener to report the status to
+     * @param eventListener Listener to report the status to, may be null
+     *
+     * @param bandwidthLimiter Limiter of the transfer rate
+     *
+     * @return Handle of the download to wait for or cancel it
+     */
+    TransportRequest<Void> downloadAsync(String url, String targetFile, TransportEventListener eventListener, BandwidthLimiter bandwidthLimiter);
+
+    /**
+     * Downloads content through gopher and stores it in the define target
+     * file, limited only by the rate limit shared by all downloads
+     *
+     * @param url Url to download the content from
+     *
+     * @param targetFile The file to write the content to
+     *
+     * @param eventListener Listener to report the status to, may be null
+     *
+     * @return Handle of the download to wait for or cancel it
      */
-    void downloadAsync(String url, String targetFile, TransportEventListener eventListener);
+    default TransportRequest<Void> downloadAsync(String url, String targetFile, TransportEventListener eventListener) {
+        return downloadAsync(url, targetFile, eventListener, BandwidthLimiter.getDefault());
+    }
 
     /**
      * Fetches a gopher page asynchronously
@@ -42,9 +63,37 @@ public interface Transport {
      *
      * @param contentType the expected content type of the url
      *
-     * @param eventListener the listener to report the result to
+     * @param eventListener the listener to report the result to, may be null
+     *
+     * @return Handle of the fetch to wait for or cancel it
+     */
+    TransportRequest<GopherMenu> fetchAsync(String url, GopherMenuItemType contentType, TransportEventListener eventListener);
+
+    /**
+     * Fetches a gopher page asynchronously
+     *
+     * @param url the url of the gopher page to fetch
+     *
+     * @param contentType the expected content type of the url
+     *
+     * @return Handle of the fetch to wait for or cancel it
+     */
+    default TransportRequest<GopherMenu> fetchAsync(String url, GopherMenuItemType contentType) {
+        return fetchAsync(url, contentType, null);
+    }
+
+    /**
+     * Streams the content of a url to a subscriber in chunks as they are
+     * received, reading from the server pauses while the subscriber has no
+     * demand for more chunks
+     *
+     * @param url the url of the content to stream
+     *
+     * @param subscriber the subscriber to pass the chunks to
+     *
+     * @return Handle of the transfer to wait for or cancel it
      */
-    void fetchAsync(String url, GopherMenuItemType contentType, TransportEventListener eventListener);
+    TransportRequest<Void> streamAsync(String url, BodySubscriber subscriber);
 
     /**
      * Fetches a gopher page
@@ -62,7 +111,8 @@ public interface Transport {
     GopherMenu fetch(String url, GopherMenuItemType contentType, TransportEventListener eventListener) throws GopherNetworkException;
 
     /**
-     * Cancels a current fetch operation
+     * Cancels the operation started last on this transport, use the handle
+     * of a request to cancel just that request
      */
     void cancel();
 }
@@ -0,0 +1,144 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gophie2.config.ConfigFile;
+import org.gophie2.config.ConfigurationManager;
+
+/**
+ * Provides the executors that run asynchronous transport operations. Page
+ * fetches and downloads use separate executors so that bulk downloads never
+ * hold up the page the user is waiting for.
+ */
+public class TransportExecutors {
+
+    /* execution strategies as used in the config file */
+    public static final String EXECUTOR_POOL = "pool";
+    public static final String EXECUTOR_VIRTUAL = "virtual";
+
+    /* default number of threads per pool */
+    private static final int DEFAULT_FETCH_THREADS = 4;
+    private static final int DEFAULT_DOWNLOAD_THREADS = 4;
+
+    /* idle pool threads are released after this time */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static ExecutorService fetchExecutor;
+    private static ExecutorService downloadExecutor;
+
+    /**
+     * Returns the shared executor for page fetches
+     *
+     * @return ExecutorService for page fetches
+     */
+    public static synchronized ExecutorService getFetchExecutor() {
+        if (fetchExecutor == null) {
+            int size = ConfigurationManager.getConfigFile().getInt("Network", "FETCH_THREADS", DEFAULT_FETCH_THREADS);
+            fetchExecutor = create("gophie-fetch", size);
+        }
+        return fetchExecutor;
+    }
+
+    /**
+     * Returns the shared executor for downloads
+     *
+     * @return ExecutorService for downloads
+     */
+    public static synchronized ExecutorService getDownloadExecutor() {
+        if (downloadExecutor == null) {
+            int size = ConfigurationManager.getConfigFile().getInt("Network", "DOWNLOAD_THREADS", DEFAULT_DOWNLOAD_THREADS);
+            downloadExecutor = create("gophie-download", size);
+        }
+        return downloadExecutor;
+    }
+
+    /**
+     * Creates an executor using the strategy defined by the EXECUTOR option
+     * in the Network section of the configuration
+     *
+     * @param name Name prefix for the threads of the executor
+     *
+     * @param size Maximum number of threads when using a pool
+     *
+     * @return The executor as configured
+     */
+    public static ExecutorService create(String name, int size) {
+        ConfigFile configFile = ConfigurationManager.getConfigFile();
+        String strategy = configFile.get("Network", "EXECUTOR", EXECUTOR_POOL).trim();
+
+        if (strategy.equalsIgnoreCase(EXECUTOR_VIRTUAL)) {
+            ExecutorService virtualExecutor = newVirtualThreadExecutor();
+            if (virtualExecutor != null) {
+                return virtualExecutor;
+            }
+
+            /* fall back to the pool on runtimes without virtual threads */
+            System.out.println("Virtual threads not supported by this runtime, using thread pool");
+        }
+
+        return newBoundedPool(name, size);
+    }
+
+    /**
+     * Creates a pool with a fixed maximum of named daemon threads, excess
+     * tasks are queued until a thread becomes available
+     *
+     * @param name Name prefix for the threads of the pool
+     *
+     * @param size Maximum number of threads in the pool
+     *
+     * @return ExecutorService backed by the bounded pool
+     */
+    public static ExecutorService newBoundedPool(String name, int size) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(Math.max(1, size), Math.max(1, size),
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                (Runnable runnable) -> {
+                    Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        /* do not keep idle threads around forever */
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread per task. The
+     * build still targets Java 8, hence the factory is looked up by
+     * reflection and only available when running on Java 21 or later.
+     *
+     * @return The virtual thread executor or null when not supported
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net;
+
+import org.gophie2.config.ConfigurationManager;
+
+/**
+ * Creates the Transport implementation selected in the configuration
+ */
+public class TransportFactory {
+
+    /* transport engine names as used in the config file */
+    public static final String TRANSPORT_NIO = "nio";
+    public static final String TRANSPORT_SOCKET = "socket";
+
+    /**
+     * Creates a new transport as defined by the TRANSPORT option in the
+     * Network section of the configuration
+     *
+     * @return The transport to use for fetches and downloads
+     */
+    public static Transport create() {
+        return create(false);
+    }
+
+    /**
+     * Creates a new transport for pages the user did not ask for, such as
+     * prefetches, its connections wait until no other request to the host
+     * is waiting
+     *
+     * @return The transport to use for background fetches
+     */
+    public static Transport createBackground() {
+        return create(true);
+    }
+
+    private static Transport create(boolean background) {
+        String engine = ConfigurationManager.getConfigFile().get("Network", "TRANSPORT", TRANSPORT_NIO);
+        if (engine.trim().equalsIgnoreCase(TRANSPORT_SOCKET)) {
+            /* legacy blocking transport with one thread per request */
+            return new GopherTransport(background);
+        }
+        return new NioTransport(background);
+    }
+}
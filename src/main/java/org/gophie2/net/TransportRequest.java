@@ -0,0 +1,183 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import org.gophie2.net.event.TransportEventListener;
+
+/**
+ * Handle of a single fetch or download. It completes with the result of the
+ * request and cancelling it aborts just this request, closing its connection
+ * right away.
+ *
+ * @param <T> The result type, a GopherMenu for fetches and Void for downloads
+ */
+public class TransportRequest<T> extends CompletableFuture<T> {
+
+    /* abort the running operation, added by the transport, and whether
+        they already ran, both guarded by the list */
+    private final List<Runnable> abortActions = new ArrayList<>();
+    private boolean aborted = false;
+
+    /**
+     * Adds an action that aborts the operation of this request. If the
+     * request already is cancelled or aborted, the action is executed
+     * right away.
+     *
+     * @param action The action that aborts the operation
+     */
+    public void onAbort(Runnable action) {
+        synchronized (abortActions) {
+            if (!aborted) {
+                abortActions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean result = super.cancel(mayInterruptIfRunning);
+        if (result) {
+            runAbortActions();
+        }
+        return result;
+    }
+
+    /**
+     * Completes the request with an error and aborts its operation,
+     * unlike cancel the error is reported to the listeners
+     *
+     * @param ex The error that ends the operation
+     *
+     * @return true when this call completed the request
+     */
+    public boolean abort(GopherNetworkException ex) {
+        boolean result = completeExceptionally(ex);
+        if (result) {
+            runAbortActions();
+        }
+        return result;
+    }
+
+    private void runAbortActions() {
+        List<Runnable> actions;
+        synchronized (abortActions) {
+            aborted = true;
+            actions = new ArrayList<>(abortActions);
+            abortActions.clear();
+        }
+        actions.forEach(Runnable::run);
+    }
+
+    /**
+     * Completes the request with the error of a failed operation
+     *
+     * @param ex The error of the operation
+     *
+     * @return true when this call completed the request
+     */
+    public boolean fail(GopherNetworkException ex) {
+        return completeExceptionally(ex);
+    }
+
+    /**
+     * Reports the outcome of this request to a listener, nothing is reported
+     * when the request is cancelled
+     *
+     * @param eventListener The listener to report to, may be null
+     *
+     * @param url The url of the request
+     *
+     * @return This request
+     */
+    public TransportRequest<T> reportTo(TransportEventListener eventListener, GopherUrl url) {
+        if (eventListener != null) {
+            whenComplete((result, error) -> {
+                if (isCancelled()) {
+                    return;
+                }
+                if (error == null) {
+                    /* downloads complete without a page */
+                    eventListener.loaded(result instanceof GopherMenu ? (GopherMenu) result : null);
+                } else {
+                    eventListener.failed(toNetworkException(error).getGopherErrorType(), url);
+                }
+            });
+        }
+        return this;
+    }
+
+    /**
+     * Blocks until the request is complete and returns its result
+     *
+     * @return The result of the request
+     *
+     * @throws GopherNetworkException when the request failed or was cancelled
+     */
+    public T await() throws GopherNetworkException {
+        try {
+            return get();
+        } catch (InterruptedException ex) {
+            /* nobody is waiting for the result anymore */
+            cancel(true);
+            Thread.currentThread().interrupt();
+            throw new GopherNetworkException(Error.USER_CANCELLED, ex.getMessage());
+        } catch (ExecutionException | CancellationException ex) {
+            throw toNetworkException(ex);
+        }
+    }
+
+    /**
+     * Creates a request that already is completed with the result
+     *
+     * @param <T> The result type
+     *
+     * @param result The result of the request
+     *
+     * @return The completed request
+     */
+    public static <T> TransportRequest<T> completed(T result) {
+        TransportRequest<T> request = new TransportRequest<>();
+        request.complete(result);
+        return request;
+    }
+
+    private static GopherNetworkException toNetworkException(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+
+        if (cause instanceof GopherNetworkException) {
+            return (GopherNetworkException) cause;
+        }
+        if (cause instanceof CancellationException) {
+            return new GopherNetworkException(Error.USER_CANCELLED, "Request was cancelled");
+        }
+        return new GopherNetworkException(Error.EXCEPTION, cause.getMessage());
+    }
+}
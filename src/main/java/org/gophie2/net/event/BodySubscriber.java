@@ -0,0 +1,40 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net.event;
+
+import java.nio.ByteBuffer;
+
+import org.gophie2.net.GopherNetworkException;
+
+/**
+ * Consumer of a streamed response body. The methods are called one after
+ * the other, never concurrently: onSubscribe first, then onNext for every
+ * chunk requested through the subscription and finally either onComplete
+ * or onError. Chunks are only read from the server as long as there is
+ * outstanding demand.
+ */
+public interface BodySubscriber {
+
+    void onSubscribe(BodySubscription subscription);
+
+    void onNext(ByteBuffer chunk);
+
+    void onError(GopherNetworkException error);
+
+    void onComplete();
+}
@@ -0,0 +1,38 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.net.event;
+
+/**
+ * Link between a streamed response body and its subscriber, used to signal
+ * demand for more chunks or to abort the transfer.
+ */
+public interface BodySubscription {
+
+    /**
+     * Requests more chunks of the body, reading from the server pauses
+     * while all requested chunks have been delivered
+     *
+     * @param count Number of additional chunks, must be positive
+     */
+    void request(long count);
+
+    /**
+     * Aborts the transfer, no further methods of the subscriber are called
+     */
+    void cancel();
+}
@@ -17,14 +17,50 @@
  */
 package org.gophie2.net.event;
 
+import java.util.List;
+
 import org.gophie2.net.Error;
 import org.gophie2.net.GopherMenu;
+import org.gophie2.net.GopherMenuItem;
 import org.gophie2.net.GopherUrl;
 
 public interface TransportEventListener {
 
     void progress(GopherUrl url, long byteCount);
 
+    /**
+     * Reports the items of a menu parsed since the last report, listeners
+     * not showing menus while they load can ignore it
+     *
+     * @param url The url of the menu
+     *
+     * @param itemList The items parsed since the last report
+     */
+    default void itemsReceived(GopherUrl url, List<GopherMenuItem> itemList) {
+    }
+
+    /**
+     * Reports the text of a document decoded since the last report,
+     * listeners not showing documents while they load can ignore it
+     *
+     * @param url The url of the document
+     *
+     * @param text The text decoded since the last report
+     */
+    default void textReceived(GopherUrl url, String text) {
+    }
+
+    /**
+     * Reports the bytes of an image received since the last report,
+     * listeners not showing images while they load can ignore it
+     *
+     * @param url The url of the image
+     *
+     * @param data The bytes received since the last report
+     */
+    default void imageDataReceived(GopherUrl url, byte[] data) {
+    }
+
     void loaded(GopherMenu result);
 
     void failed(Error error, GopherUrl url);
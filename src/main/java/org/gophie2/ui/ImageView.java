@@ -0,0 +1,158 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.ui;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JComponent;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.border.EmptyBorder;
+
+import org.gophie2.config.ColorPalette;
+import org.gophie2.config.ConfigurationManager;
+
+/**
+ * Displays an image that was decoded and scaled in advance, painting
+ * it is nothing more than copying the pixels inside the visible area.
+ */
+public class ImageView extends JComponent implements Scrollable {
+
+    private static final long serialVersionUID = 5810394276601947714L;
+
+    /* space left and right of the image */
+    public static final int HORIZONTAL_INSETS = 18 + 16;
+
+    private final BufferedImage image;
+    private final boolean actualSize;
+
+    /**
+     * Constructs the view for an image
+     *
+     * @param image The image to display at its size
+     *
+     * @param actualSize true when the image is at the actual size of the
+     * source, which is scrolled sideways instead of cut off by the view
+     */
+    public ImageView(BufferedImage image, boolean actualSize) {
+        this.image = image;
+        this.actualSize = actualSize;
+
+        ColorPalette colors = ConfigurationManager.getColors();
+        setOpaque(true);
+        setBackground(colors.getPageBackground());
+        setBorder(new EmptyBorder(10, 18, 8, 16));
+    }
+
+    /**
+     * Returns whether the image is at the actual size of the source
+     *
+     * @return true when the image is at its actual size
+     */
+    public boolean isActualSize() {
+        return actualSize;
+    }
+
+    /**
+     * Scales an image down to a maximum width, halving it step by step
+     * first so large images keep their detail
+     *
+     * @param image The image to scale
+     *
+     * @param maximumWidth The maximum width of the result
+     *
+     * @return The scaled image or the image itself when it is small enough
+     */
+    public static BufferedImage scaleToWidth(BufferedImage image, int maximumWidth) {
+        if (image.getWidth() <= maximumWidth) {
+            return image;
+        }
+
+        int targetHeight = Math.max(1, (int) ((long) image.getHeight() * maximumWidth / image.getWidth()));
+        BufferedImage result = image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        do {
+            width = Math.max(maximumWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+
+            BufferedImage step = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = step.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(result, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            result = step;
+        } while (width > maximumWidth);
+        return result;
+    }
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        Rectangle clip = graphics.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        graphics.setColor(getBackground());
+        graphics.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        Insets insets = getInsets();
+        graphics.drawImage(image, insets.left, insets.top, null);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        Insets insets = getInsets();
+        return new Dimension(insets.left + image.getWidth() + insets.right,
+                insets.top + image.getHeight() + insets.bottom);
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return 16;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return !actualSize;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
@@ -23,6 +23,7 @@ import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.FileDialog;
 import java.awt.Toolkit;
+import java.util.List;
 import java.util.logging.Logger;
 import org.gophie2.ui.tk.search.SearchPanel;
 
@@ -45,6 +46,7 @@ import org.gophie2.ui.event.PageMenuEventAdapter;
 import org.gophie2.ui.event.PageMenuEventListener;
 import org.gophie2.ui.tk.download.ConfirmDownload;
 import org.gophie2.ui.tk.history.History;
+import org.gophie2.ui.tk.history.HistoryEntry;
 import org.gophie2.ui.tk.requesters.EmailRequester;
 import org.gophie2.ui.tk.requesters.GopherRequester;
 import org.gophie2.ui.tk.requesters.Requester;
@@ -216,16 +218,17 @@ public class MainWindow extends PageMenuEventAdapter implements NavigationInputL
     @Override
     public void refreshRequested() {
         /* get the current gopher page to reload it */
-        GopherMenu currentPage = history.current();
+        HistoryEntry currentPage = history.current();
 
-        /* reload practically means just requesting this page again */
-        gopher.request(messageView, currentPage.getUrl().getUrlString(), currentPage.getContentType());
+        /* reload means requesting this page again bypassing the cache */
+        gopher.request(messageView, currentPage.getUrl().getUrlString(), currentPage.getContentType(), true);
     }
 
     @Override
     public void stopRequested() {
         /* cancel any current operation */
         gopher.cancel();
+        gopher.cancelPrefetch();
 
         /* notify the local handler about cancellation by the user */
         failed(Error.USER_CANCELLED, null);
@@ -233,6 +236,18 @@ public class MainWindow extends PageMenuEventAdapter implements NavigationInputL
 
     @Override
     public void loaded(GopherMenu result) {
+        loaded(result, null);
+    }
+
+    /**
+     * Displays a page that was loaded or taken from the history
+     *
+     * @param result The page to display
+     *
+     * @param historyEntry The history entry when moving back or
+     * forward to the page, null when it was loaded
+     */
+    public void loaded(GopherMenu result, HistoryEntry historyEntry) {
         /* set the window title to the url of this page */
         frame.setTitle(result.getUrl().getUrlString()
                 + " (" + DataSizeView.get(result.getByteArray().length) + ")"
@@ -246,21 +261,32 @@ public class MainWindow extends PageMenuEventAdapter implements NavigationInputL
             /* this is a gopher menu hence it is rendered like
                 one including highlighting of links and
                 the menu icons for the various item types */
-            pageView.showGopherPage(result);
+            pageView.showGopherPage(result, historyEntry);
         } else {
             /* this is plain content, so render it
                 appropriately and let the view decide
                 on how to handle the content */
-            pageView.showGopherContent(result);
+            pageView.showGopherContent(result, historyEntry);
         }
 
-        /* update the history */
+        /* update the history, the rendering is kept for it */
         history.updateHistory(result);
+        pageView.setHistoryEntry(history.current());
 
         /* reset the loading indicators */
         navigationBar.setIsLoading(false);
     }
 
+    /**
+     * Drops everything kept for a history page that is no longer
+     * parsed or was removed from the history
+     *
+     * @param historyEntry The entry of the page
+     */
+    public void historyPageReleased(HistoryEntry historyEntry) {
+        pageView.discardViewState(historyEntry);
+    }
+
     @Override
     public void failed(Error error, GopherUrl url) {
         String infoText = null;
@@ -303,6 +329,24 @@ public class MainWindow extends PageMenuEventAdapter implements NavigationInputL
                 + " - " + APPLICATION_TITLE);
     }
 
+    @Override
+    public void itemsReceived(GopherUrl url, List<GopherMenuItem> itemList) {
+        /* show the items of the menu while it is still loading */
+        pageView.appendGopherItems(url, itemList);
+    }
+
+    @Override
+    public void textReceived(GopherUrl url, String text) {
+        /* show the text while it is still loading */
+        pageView.appendGopherText(url, text);
+    }
+
+    @Override
+    public void imageDataReceived(GopherUrl url, byte[] data) {
+        /* show the image while it is still loading */
+        pageView.appendImageData(url, data);
+    }
+
     @Override
     public void showDownloadRequested() {
         if (DownloadWindow.INSTANCE.isVisible()) {
@@ -312,6 +356,19 @@ public class MainWindow extends PageMenuEventAdapter implements NavigationInputL
         }
     }
 
+    @Override
+    public void linkEntered(String addressText, GopherMenuItem item) {
+        /* items of the current page know their type, others are not fetched */
+        if (item != null) {
+            gopher.prefetch(addressText, item.getItemType());
+        }
+    }
+
+    @Override
+    public void linkExited() {
+        gopher.cancelPrefetch();
+    }
+
     @Override
     public void setHomeGopherRequested(String url) {
         /* set the gopher home to the config file */
@@ -340,6 +397,15 @@ public class MainWindow extends PageMenuEventAdapter implements NavigationInputL
         pageView.selectAllText();
     }
 
+    @Override
+    public void showThumbnailsRequested(boolean shown) {
+        /* switch the view and remember the choice in the config file */
+        pageView.setThumbnailsShown(shown);
+        ConfigFile configFile = ConfigurationManager.getConfigFile();
+        configFile.set("Navigation", "THUMBNAILS", String.valueOf(shown));
+        configFile.save();
+    }
+
     @Override
     public void homeGopherRequested() {
         ConfigFile configFile = ConfigurationManager.getConfigFile();
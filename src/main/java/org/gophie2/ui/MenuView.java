@@ -0,0 +1,369 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.ui;
+
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import org.gophie2.config.ColorPalette;
+import org.gophie2.config.ConfigurationManager;
+import org.gophie2.fonts.IconFont;
+import org.gophie2.net.GopherMenuItem;
+import org.gophie2.net.GopherMenuItemType;
+
+/**
+ * Renders large gopher menus directly from the item list. Every row has the
+ * same height, so only the rows inside the visible area are painted and
+ * links are found by their row index, no matter how long the menu is. With
+ * thumbnails shown, image rows are taller and rows are found by a binary
+ * search over their offsets instead.
+ */
+public class MenuView extends JComponent implements Scrollable {
+
+    private static final long serialVersionUID = 3120937524810387313L;
+
+    /* vertical space around the text of a row */
+    private static final int ROW_PADDING = 4;
+
+    /* space between the line number, the icon and the text */
+    private static final int COLUMN_GAP = 8;
+
+    /* size of the item type icons */
+    private static final float ICON_SIZE = 12f;
+
+    private final PageView pageView;
+    private final Font iconFont;
+    private final ColorPalette colors;
+
+    private List<GopherMenuItem> itemList;
+    private int rowHeight;
+    private int numberWidth;
+    private int iconWidth;
+
+    /* loads the thumbnails of image rows, null when not shown */
+    private ThumbnailLoader thumbnailLoader;
+
+    /* requests the thumbnails whenever the visible area changes */
+    private final ChangeListener viewportListener = (ChangeEvent event) -> loadVisibleThumbnails();
+
+    /* offsets of the rows when they differ in height, the entry
+        after the last row is the height of all rows */
+    private int[] rowOffsets;
+
+    /**
+     * Constructs the menu view
+     *
+     * @param pageView The page view providing the item icons
+     *
+     * @param textFont The font for line numbers and item text
+     */
+    public MenuView(PageView pageView, Font textFont) {
+        this.pageView = pageView;
+        this.iconFont = new IconFont(ICON_SIZE);
+        this.colors = ConfigurationManager.getColors();
+        this.itemList = Collections.emptyList();
+
+        setFont(textFont);
+        setOpaque(true);
+        setBackground(colors.getPageBackground());
+        setBorder(new EmptyBorder(10, 12, 8, 16));
+        updateMetrics();
+    }
+
+    /**
+     * Sets the items to display
+     *
+     * @param itemList The items of the gopher menu
+     */
+    public void setItems(List<GopherMenuItem> itemList) {
+        this.itemList = itemList;
+        updateMetrics();
+        revalidate();
+        repaint();
+        loadVisibleThumbnails();
+    }
+
+    /**
+     * Shows thumbnails in the rows of image items
+     *
+     * @param thumbnailLoader The loader of the thumbnails or null
+     * to show no thumbnails
+     */
+    public void setThumbnailLoader(ThumbnailLoader thumbnailLoader) {
+        if (this.thumbnailLoader != null && thumbnailLoader == null) {
+            /* drop the loads of the thumbnails no longer shown */
+            this.thumbnailLoader.load(Collections.emptyList());
+        }
+        this.thumbnailLoader = thumbnailLoader;
+        updateMetrics();
+        revalidate();
+        repaint();
+        loadVisibleThumbnails();
+    }
+
+    /**
+     * Returns the row at the vertical position
+     *
+     * @param y The vertical position inside this component
+     *
+     * @return The row index or -1 when there is no row
+     */
+    public int getRowAt(int y) {
+        int row = findRow(y - getInsets().top);
+        if (y < getInsets().top || row >= itemList.size()) {
+            return -1;
+        }
+        return row;
+    }
+
+    /**
+     * Returns the row at an offset from the first row, rows
+     * past the last one continue with the default height
+     */
+    private int findRow(int offset) {
+        if (rowOffsets == null || offset < 0) {
+            return offset / rowHeight;
+        }
+
+        int index = Arrays.binarySearch(rowOffsets, offset);
+        return (index >= 0) ? index : -index - 2;
+    }
+
+    private int getRowOffset(int row) {
+        return (rowOffsets == null) ? row * rowHeight : rowOffsets[row];
+    }
+
+    private int getRowHeight(int row) {
+        return (rowOffsets == null) ? rowHeight : rowOffsets[row + 1] - rowOffsets[row];
+    }
+
+    private static boolean isImage(GopherMenuItem item) {
+        return item.getItemType().isImage();
+    }
+
+    /**
+     * Returns the link item at the vertical position
+     *
+     * @param y The vertical position inside this component
+     *
+     * @return The item or null when there is no link
+     */
+    public GopherMenuItem getLinkAt(int y) {
+        int row = getRowAt(y);
+        if (row < 0) {
+            return null;
+        }
+
+        GopherMenuItem item = itemList.get(row);
+        return item.getItemType() == GopherMenuItemType.INFORMATION ? null : item;
+    }
+
+    private void updateMetrics() {
+        FontMetrics metrics = getFontMetrics(getFont());
+        FontMetrics iconMetrics = getFontMetrics(iconFont);
+        rowHeight = Math.max(metrics.getHeight(), iconMetrics.getHeight()) + ROW_PADDING;
+        numberWidth = metrics.stringWidth(String.valueOf(Math.max(1, itemList.size())));
+        iconWidth = iconMetrics.getHeight();
+
+        /* image rows make room for their thumbnail */
+        rowOffsets = null;
+        if (thumbnailLoader != null && itemList.stream().anyMatch(MenuView::isImage)) {
+            int imageRowHeight = Math.max(rowHeight, ThumbnailLoader.THUMBNAIL_SIZE + ROW_PADDING);
+            rowOffsets = new int[itemList.size() + 1];
+            for (int row = 0; row < itemList.size(); row++) {
+                rowOffsets[row + 1] = rowOffsets[row] + (isImage(itemList.get(row)) ? imageRowHeight : rowHeight);
+            }
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        Graphics2D g = (Graphics2D) graphics.create();
+        try {
+            /* render text the way the desktop does */
+            Map<?, ?> desktopHints = (Map<?, ?>) Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+            if (desktopHints != null) {
+                g.addRenderingHints(desktopHints);
+            } else {
+                g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            }
+
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+            if (itemList.isEmpty()) {
+                return;
+            }
+
+            /* only paint the rows intersecting the clip */
+            Insets insets = getInsets();
+            int firstRow = Math.max(0, findRow(clip.y - insets.top));
+            int lastRow = Math.min(itemList.size() - 1, findRow(clip.y + clip.height - insets.top));
+
+            FontMetrics metrics = g.getFontMetrics(getFont());
+            FontMetrics iconMetrics = g.getFontMetrics(iconFont);
+            int iconX = insets.left + numberWidth + COLUMN_GAP;
+            int textX = iconX + iconWidth + COLUMN_GAP;
+
+            for (int row = firstRow; row <= lastRow; row++) {
+                GopherMenuItem item = itemList.get(row);
+                int top = insets.top + getRowOffset(row);
+                int height = getRowHeight(row);
+                int baseline = top + (height - metrics.getHeight()) / 2 + metrics.getAscent();
+
+                /* right aligned line number */
+                String lineNumber = String.valueOf(row + 1);
+                g.setFont(getFont());
+                g.setColor(colors.getPageLinenumber());
+                g.drawString(lineNumber, insets.left + numberWidth - metrics.stringWidth(lineNumber), baseline);
+
+                /* icon of the item type */
+                g.setFont(iconFont);
+                g.setColor(colors.getPageText());
+                int iconBaseline = top + (height - iconMetrics.getHeight()) / 2 + iconMetrics.getAscent();
+                g.drawString(pageView.getGopherItemTypeIcon(item.getItemType()), iconX, iconBaseline);
+
+                /* the thumbnail of image rows in front of the text */
+                int itemX = textX;
+                if (rowOffsets != null && isImage(item)) {
+                    BufferedImage thumbnail = thumbnailLoader.getThumbnail(item);
+                    if (thumbnail != null) {
+                        g.drawImage(thumbnail, textX + (ThumbnailLoader.THUMBNAIL_SIZE - thumbnail.getWidth()) / 2,
+                                top + (height - thumbnail.getHeight()) / 2, null);
+                    }
+                    itemX += ThumbnailLoader.THUMBNAIL_SIZE + COLUMN_GAP;
+                }
+
+                /* the item text, links in the link color */
+                g.setFont(getFont());
+                g.setColor(item.getItemType() == GopherMenuItemType.INFORMATION
+                        ? colors.getPageText() : colors.getPageLinkText());
+                g.drawString(item.getUserDisplayString(), itemX, baseline);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (getParent() instanceof JViewport) {
+            ((JViewport) getParent()).addChangeListener(viewportListener);
+        }
+        loadVisibleThumbnails();
+    }
+
+    @Override
+    public void removeNotify() {
+        if (getParent() instanceof JViewport) {
+            ((JViewport) getParent()).removeChangeListener(viewportListener);
+        }
+
+        super.removeNotify();
+
+        /* none of the rows is visible anymore */
+        loadVisibleThumbnails();
+    }
+
+    /**
+     * Requests the thumbnails of the image rows inside the visible
+     * area, the loads of all other rows are dropped
+     */
+    private void loadVisibleThumbnails() {
+        if (thumbnailLoader == null) {
+            return;
+        }
+
+        List<GopherMenuItem> visibleItems = new ArrayList<>();
+        if (rowOffsets != null && isShowing()) {
+            Rectangle visible = getVisibleRect();
+            int firstRow = Math.max(0, findRow(visible.y - getInsets().top));
+            int lastRow = Math.min(itemList.size() - 1, findRow(visible.y + visible.height - getInsets().top));
+            for (int row = firstRow; row <= lastRow; row++) {
+                if (isImage(itemList.get(row))) {
+                    visibleItems.add(itemList.get(row));
+                }
+            }
+        }
+        thumbnailLoader.load(visibleItems);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        Insets insets = getInsets();
+        int width = insets.left + numberWidth + iconWidth + 2 * COLUMN_GAP + insets.right;
+        long rowsHeight = (rowOffsets == null) ? (long) itemList.size() * rowHeight : rowOffsets[itemList.size()];
+        long height = insets.top + rowsHeight + insets.bottom;
+        return new Dimension(width, (int) Math.min(Integer.MAX_VALUE, height));
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? rowHeight : 16;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        if (orientation == SwingConstants.VERTICAL) {
+            /* page by whole rows */
+            return Math.max(rowHeight, (visibleRect.height / rowHeight - 1) * rowHeight);
+        }
+        return visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
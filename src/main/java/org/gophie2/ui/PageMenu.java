@@ -20,15 +20,13 @@ package org.gophie2.ui;
 import java.awt.*;
 import java.awt.datatransfer.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.ItemEvent;
 import java.awt.image.*;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 
-import javax.imageio.ImageIO;
-
 import org.gophie2.ui.event.PageMenuEventListener;
+import org.gophie2.ui.util.ImageCache;
 import org.gophie2.ui.util.ImageTransferable;
 import org.gophie2.net.GopherMenu;
 import org.gophie2.net.GopherMenuItemType;
@@ -51,6 +49,7 @@ public class PageMenu extends PopupMenu {
     private final MenuItem copySourceItem;
     private final MenuItem selectAllItem;
     private final MenuItem setHomeGopherItem;
+    private final CheckboxMenuItem showThumbnailsItem;
     private final PopupMenu copyMenu;
 
     /* private variables */
@@ -145,6 +144,15 @@ public class PageMenu extends PopupMenu {
             }
         });
 
+        /* requests listeners to show or hide thumbnails of images */
+        this.showThumbnailsItem = new CheckboxMenuItem("Show Thumbnails");
+        this.showThumbnailsItem.addItemListener((ItemEvent e) -> {
+            boolean shown = showThumbnailsItem.getState();
+            eventListenerList.forEach((listener) -> {
+                listener.showThumbnailsRequested(shown);
+            });
+        });
+
         /* create the copy menu with its sub-items */
         this.copyMenu = new PopupMenu("Copy");
 
@@ -240,6 +248,7 @@ public class PageMenu extends PopupMenu {
                 /* only allow setting as home gopher when
                     this page is a gopher menu page */
                 if (currentPage.getContentType() == GopherMenuItemType.GOPHERMENU) {
+                    this.add(this.showThumbnailsItem);
                     this.addSeparator();
                     this.add(this.setHomeGopherItem);
                 }
@@ -274,8 +283,7 @@ public class PageMenu extends PopupMenu {
             if (contentType.isImage()) {
                 /* seems to be a valid image file, copy it to clipboard */
                 try {
-                    InputStream imageInputStream = new ByteArrayInputStream(currentPage.getByteArray());
-                    BufferedImage bufferedImage = ImageIO.read(imageInputStream);
+                    BufferedImage bufferedImage = ImageCache.INSTANCE.getImage(currentPage);
                     ImageTransferable transferImage = new ImageTransferable(bufferedImage);
                     Clipboard clipBoard = Toolkit.getDefaultToolkit().getSystemClipboard();
                     clipBoard.setContents(transferImage, null);
@@ -297,6 +305,15 @@ public class PageMenu extends PopupMenu {
         clipboard.setContents((new StringSelection(text)), null);
     }
 
+    /**
+     * Sets whether thumbnails of images are shown in menus
+     *
+     * @param shown true when thumbnails are shown
+     */
+    public void setThumbnailsShown(boolean shown) {
+        this.showThumbnailsItem.setState(shown);
+    }
+
     public void setCurrentPage(GopherMenu value) {
         /* reset the link target when a new page was loaded */
         this.targetLink = null;
@@ -17,24 +17,39 @@
  */
 package org.gophie2.ui;
 
-import java.awt.Color;
+import java.awt.Component;
 import java.awt.Cursor;
 import java.awt.Font;
+import java.awt.Point;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
-import javax.imageio.ImageIO;
+import javax.swing.JComponent;
 import javax.swing.JEditorPane;
 import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
 
 import javax.swing.border.EmptyBorder;
 import javax.swing.event.HyperlinkEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultCaret;
+import javax.swing.text.Document;
+import javax.swing.text.html.HTMLDocument;
 import javax.swing.text.html.HTMLEditorKit;
 import javax.swing.text.html.StyleSheet;
 import org.gophie2.config.ColorPalette;
@@ -44,8 +59,14 @@ import org.gophie2.fonts.ConsoleFont;
 import org.gophie2.net.GopherMenuItem;
 import org.gophie2.net.GopherMenu;
 import org.gophie2.net.GopherMenuItemType;
+import org.gophie2.net.GopherUrl;
+import org.gophie2.net.TransportExecutors;
 import org.gophie2.ui.event.NavigationInputListener;
 import org.gophie2.ui.event.PageMenuEventListener;
+import org.gophie2.ui.tk.history.HistoryEntry;
+import org.gophie2.ui.util.ImageCache;
+import org.gophie2.ui.util.ImageDecoder;
+import org.gophie2.ui.util.PartialImageDecoder;
 
 /**
  * The PageView component renders GopherMenu objects
@@ -54,9 +75,41 @@ public class PageView extends JScrollPane {
 
     private static final long serialVersionUID = -1691878866552844125L;
 
+    /* table definitions for rendered gopher menus */
+    private static final String PAGE_TABLE_ID = "page";
+    private static final String PAGE_TABLE_START = "<table cellspacing=\"0\" cellpadding=\"2\">";
+    private static final String PAGE_TABLE_START_STREAMED = "<table id=\"" + PAGE_TABLE_ID + "\" cellspacing=\"0\" cellpadding=\"2\">";
+
+    /* maximum number of rows appended while a menu is received */
+    private static final int PROGRESSIVE_ROW_LIMIT = 500;
+
+    /* default number of rows from which on menus are painted
+        by the menu view instead of being rendered as html */
+    private static final int DEFAULT_VIRTUAL_MENU_ROWS = 1000;
+
+    /* default number of rendered pages kept for the history */
+    private static final int DEFAULT_RENDERED_PAGES = 5;
+
+    /* width images are fitted to while the view has no size yet */
+    private static final int DEFAULT_IMAGE_WIDTH = 800;
+
+    /* partial images are decoded from the first byte every time, so
+        they are only decoded again once the data grew by this part of
+        the data decoded before, which keeps the total work linear */
+    private static final int PARTIAL_IMAGE_GROWTH = 4;
+
+    /* default size in kilobytes from which on text is shown
+        by the text view instead of the editor pane */
+    private static final int DEFAULT_TEXT_VIEWER_SIZE = 1024;
+
     private PageMenu pageMenu;
     private JEditorPane viewPane;
-    private final JEditorPane headerPane;
+    private JEditorPane headerPane;
+    private final MenuView menuView;
+    private final int virtualMenuRows;
+    private final ThumbnailLoader thumbnailLoader;
+    private boolean thumbnailsShown;
+    private final long textViewerSize;
     private final HTMLEditorKit editorKit;
     private StyleSheet styleSheet;
     private final Font textFont;
@@ -65,120 +118,873 @@ public class PageView extends JScrollPane {
 
     private GopherMenu currentPage = null;
 
+    /* menu or text currently displayed while still being received */
+    private GopherUrl streamingUrl = null;
+    private int streamedItemCount = 0;
+    private long streamedTextLength = 0;
+
+    /* image data received so far, the decoder used for it and
+        whether its first part is being decoded for display */
+    private ImageData streamedImageData = null;
+    private PartialImageDecoder partialImageDecoder = null;
+    private int decodedImageLength = 0;
+    private boolean partialImageDecoding = false;
+
+    /* items of the links in the html view by their url */
+    private Map<String, GopherMenuItem> linkItems = new HashMap<>();
+
+    /* link of the menu view the mouse is over */
+    private GopherMenuItem hoveredItem = null;
+
+    /* builds html documents in the background, only the
+        latest page shown is installed into the views */
+    private final ExecutorService renderExecutor;
+    private final ExecutorService indexExecutor;
+    private volatile int renderGeneration = 0;
+
+    /* rendered pages ready to be swapped back in when moving back
+        and forward, kept by their history entry, the current panes
+        belong to it when kept, the displayed page otherwise */
+    private final Map<HistoryEntry, ViewState> renderedPages;
+    private final int maximumRenderedPages;
+    private GopherMenu renderedPage = null;
+    private HistoryEntry renderedEntry = null;
+    private boolean panesKept = false;
+
     public void addListener(NavigationInputListener listener) {
         inputListenerList.add(listener);
     }
 
-    public void showGopherContent(GopherMenu content) {
+    /**
+     * Displays a document or an image
+     *
+     * @param content The content to display
+     *
+     * @param historyEntry The history entry when moving back or forward
+     * to it, its kept rendering is then swapped back in, null otherwise
+     */
+    public void showGopherContent(GopherMenu content, HistoryEntry historyEntry) {
+        /* the text or image might already be displayed progressively */
+        GopherMenuItemType contentType = content.getContentType();
+        boolean streamed = (content.getUrl() == streamingUrl && streamedItemCount == 0);
+        Point streamedPosition = getViewport().getViewPosition();
+        if (streamed && !contentType.isImage() && content.getByteArray().length < textViewerSize
+                && streamedTextLength < textViewerSize) {
+            streamingUrl = null;
+            streamedTextLength = 0;
+            pageMenu.setCurrentPage(content);
+            renderedPage = content;
+            removeTextTerminator();
+            return;
+        }
+        streamingUrl = null;
+        streamedItemCount = 0;
+        streamedTextLength = 0;
+        discardStreamedImage();
+
+        /* swap in the rendered content if it is still around */
+        storeViewState();
+        pageMenu.setCurrentPage(content);
+        if (restoreViewState(historyEntry, content)) {
+            return;
+        }
+
         /* reset the header to just show nothing */
+        releasePanes();
         headerPane.setText("");
+        int generation = ++renderGeneration;
+        linkItems = new HashMap<>();
+        renderedPage = content;
 
         /* set current page to the page menu */
         pageMenu.setCurrentPage(content);
-        GopherMenuItemType contentType = content.getContentType();
 
-        /* check the type of content supplied */
+        /* images are decoded and scaled in the background, the
+            partially received image stays on display until then */
         if (contentType.isImage()) {
-            /* try to display as an image */
+            renderedPage = null;
+            if (!streamed) {
+                showView(viewPane);
+                viewPane.setText("");
+            }
+            showImageView(content, generation, streamed ? streamedPosition : new Point(0, 0));
+            return;
+        }
+        showView(viewPane);
+
+        /* large text is displayed from a memory mapped file, at
+            the position the progressively displayed text was at */
+        if (content.getByteArray().length >= textViewerSize) {
+            renderedPage = null;
+            if (!streamed) {
+                viewPane.setText("");
+            }
+            showTextView(content, generation, streamed ? streamedPosition : new Point(0, 0));
+            return;
+        }
+
+        /* display content as plain text */
+        viewPane.setContentType("text/plain");
+        viewPane.setText(content.getSourceCode().replace("\n.\r\n", ""));
+    }
+
+    /**
+     * Displays a gopher menu
+     *
+     * @param page The menu to display
+     *
+     * @param historyEntry The history entry when moving back or forward
+     * to it, its kept rendering is then swapped back in, null otherwise
+     */
+    public void showGopherPage(GopherMenu page, HistoryEntry historyEntry) {
+        /* set the current local gopher page */
+        currentPage = page;
+
+        /* set current page to the page menu */
+        pageMenu.setCurrentPage(page);
+
+        /* swap in the rendered page if it is still around */
+        storeViewState();
+        if (restoreViewState(historyEntry, page)) {
+            return;
+        }
+
+        /* all rows might already be displayed progressively */
+        boolean streamed = (page.getUrl() == streamingUrl
+                && page.getItemList().size() == streamedItemCount);
+        streamingUrl = null;
+        streamedItemCount = 0;
+        int generation = ++renderGeneration;
+
+        /* large menus are painted row by row instead of laying out
+            an html table with every single row, so are menus with
+            images while their thumbnails are shown */
+        if (page.getItemList().size() >= virtualMenuRows
+                || (thumbnailsShown && page.getItemList().stream().anyMatch((item) -> item.getItemType().isImage()))) {
+            releasePanes();
+            viewPane.setText("");
+            headerPane.setText("");
+            linkItems = new HashMap<>();
+            menuView.setItems(page.getItemList());
+            showView(menuView);
+            getViewport().setViewPosition(new Point(0, 0));
+            renderedPage = page;
+            return;
+        }
+
+        showView(viewPane);
+        if (streamed) {
+            renderedPage = page;
+            return;
+        }
+
+        /* build the documents in the background and keep the
+            previous page on display until they are complete */
+        List<GopherMenuItem> itemList = page.getItemList();
+        renderExecutor.execute(() -> {
+            if (generation != renderGeneration) {
+                return;
+            }
+
+            /* create the headers */
+            StringBuilder renderedHeader = new StringBuilder(PAGE_TABLE_START);
+            StringBuilder renderedContent = new StringBuilder(PAGE_TABLE_START);
+            Map<String, GopherMenuItem> renderedLinks = new HashMap<>();
+
+            int lineNumber = 1;
+            for (GopherMenuItem item : itemList) {
+                renderItem(renderedHeader, renderedContent, renderedLinks, item, lineNumber);
+                lineNumber++;
+            }
+
+            /* the documents are not attached to any view yet,
+                hence they can be parsed outside the event thread */
+            Document viewDocument = createDocument(renderedContent.append("</table>").toString());
+            Document headerDocument = createDocument(renderedHeader.append("</table>").toString());
+            if (viewDocument == null || headerDocument == null) {
+                return;
+            }
+
+            SwingUtilities.invokeLater(() -> {
+                /* another page was shown in the meantime */
+                if (generation != renderGeneration) {
+                    return;
+                }
+
+                /* install both documents at once */
+                releasePanes();
+                showView(viewPane);
+                renderedPage = page;
+                linkItems = renderedLinks;
+                viewPane.setContentType("text/html");
+                viewPane.setDocument(viewDocument);
+                headerPane.setContentType("text/html");
+                headerPane.setDocument(headerDocument);
+
+                /* scroll the view pane to the top */
+                viewPane.setCaretPosition(0);
+            });
+        });
+    }
+
+    /**
+     * Parses html code into a new document
+     *
+     * @param htmlCode The html code to parse
+     *
+     * @return The document or null when parsing failed
+     */
+    private Document createDocument(String htmlCode) {
+        Document document = editorKit.createDefaultDocument();
+        try {
+            editorKit.read(new StringReader(htmlCode), document, 0);
+        } catch (IOException | BadLocationException ex) {
+            System.out.println("Failed to render gopher page: " + ex.getMessage());
+            return null;
+        }
+        return document;
+    }
+
+    /**
+     * Appends items of a gopher menu that is still being received to the
+     * view. Only the first rows are rendered progressively, the full page is
+     * rendered once it is loaded completely.
+     *
+     * @param url The url of the menu the items belong to
+     *
+     * @param itemList The items received since the last call
+     */
+    public void appendGopherItems(GopherUrl url, List<GopherMenuItem> itemList) {
+        /* ignore items of pages that are already fully displayed */
+        if (currentPage != null && currentPage.getUrl() == url) {
+            return;
+        }
+
+        if (url != streamingUrl) {
+            /* first items of a new page, start with empty tables */
+            storeViewState();
+            releasePanes();
+            streamingUrl = url;
+            streamedItemCount = 0;
+            showView(viewPane);
+            renderGeneration++;
+            linkItems = new HashMap<>();
+            viewPane.setContentType("text/html");
+            viewPane.setText(PAGE_TABLE_START_STREAMED + "</table>");
+            headerPane.setContentType("text/html");
+            headerPane.setText(PAGE_TABLE_START_STREAMED + "</table>");
+            viewPane.setCaretPosition(0);
+        }
+
+        if (streamedItemCount >= PROGRESSIVE_ROW_LIMIT) {
+            return;
+        }
+
+        /* render the rows for the new items */
+        StringBuilder renderedHeader = new StringBuilder();
+        StringBuilder renderedContent = new StringBuilder();
+        int count = Math.min(itemList.size(), PROGRESSIVE_ROW_LIMIT - streamedItemCount);
+        for (int i = 0; i < count; i++) {
+            renderItem(renderedHeader, renderedContent, linkItems, itemList.get(i), streamedItemCount + i + 1);
+        }
+
+        try {
+            /* append the rows to the tables of both documents */
+            HTMLDocument viewDocument = (HTMLDocument) viewPane.getDocument();
+            viewDocument.insertBeforeEnd(viewDocument.getElement(PAGE_TABLE_ID), renderedContent.toString());
+            HTMLDocument headerDocument = (HTMLDocument) headerPane.getDocument();
+            headerDocument.insertBeforeEnd(headerDocument.getElement(PAGE_TABLE_ID), renderedHeader.toString());
+            streamedItemCount += count;
+        } catch (BadLocationException | IOException ex) {
+            /* the full page is rendered when loaded anyway */
+            System.out.println("Failed to append gopher items: " + ex.getMessage());
+            streamedItemCount = PROGRESSIVE_ROW_LIMIT;
+        }
+    }
+
+    /**
+     * Appends text of a document that is still being received to the view.
+     * Only the text up to the size of the text viewer is appended, larger
+     * documents are displayed by the text view once loaded completely.
+     *
+     * @param url The url of the document the text belongs to
+     *
+     * @param text The text received since the last call
+     */
+    public void appendGopherText(GopherUrl url, String text) {
+        if (url != streamingUrl) {
+            /* first text of a new document, start with an empty pane */
+            storeViewState();
+            releasePanes();
+            streamingUrl = url;
+            streamedTextLength = 0;
+            showView(viewPane);
+            renderGeneration++;
+            linkItems = new HashMap<>();
+            headerPane.setText("");
+            viewPane.setContentType("text/plain");
+            viewPane.setText("");
+        }
+
+        if (streamedTextLength >= textViewerSize) {
+            return;
+        }
+
+        try {
+            /* appending at the end keeps the caret and the scroll position */
+            Document document = viewPane.getDocument();
+            document.insertString(document.getLength(), text.replace("\r", ""), null);
+            streamedTextLength += text.length();
+        } catch (BadLocationException ex) {
+            /* the full text is displayed when loaded anyway */
+            System.out.println("Failed to append text: " + ex.getMessage());
+            streamedTextLength = textViewerSize;
+        }
+    }
+
+    /**
+     * Removes the line with the dot ending a gopher response
+     * from the progressively displayed text
+     */
+    private void removeTextTerminator() {
+        Document document = viewPane.getDocument();
+        int length = document.getLength();
+        try {
+            if (length >= 3 && document.getText(length - 3, 3).equals("\n.\n")) {
+                document.remove(length - 3, 3);
+            }
+        } catch (BadLocationException ex) {
+            System.out.println("Failed to remove the text terminator: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Appends data of an image that is still being received. The data
+     * received so far is decoded in the background, subsampled to the
+     * width of the view, and displayed as far as it goes.
+     *
+     * @param url The url of the image the data belongs to
+     *
+     * @param data The data received since the last call
+     */
+    public void appendImageData(GopherUrl url, byte[] data) {
+        if (url != streamingUrl) {
+            /* first data of a new image, start with an empty view */
+            storeViewState();
+            releasePanes();
+            streamingUrl = url;
+            streamedItemCount = 0;
+            streamedTextLength = 0;
+            discardStreamedImage();
+            streamedImageData = new ImageData();
+            partialImageDecoder = new PartialImageDecoder();
+            showView(viewPane);
+            renderGeneration++;
+            linkItems = new HashMap<>();
+            headerPane.setText("");
+            viewPane.setContentType("text/plain");
+            viewPane.setText("");
+        }
+
+        streamedImageData.write(data, 0, data.length);
+        int length = streamedImageData.size();
+        if (partialImageDecoding || length - decodedImageLength < decodedImageLength / PARTIAL_IMAGE_GROWTH) {
+            /* the data is decoded again with a later call */
+            return;
+        }
+
+        /* bytes below the current size are never written again, so
+            the array is decoded as it is without copying it */
+        partialImageDecoding = true;
+        decodedImageLength = length;
+        byte[] received = streamedImageData.getBuffer();
+        PartialImageDecoder decoder = partialImageDecoder;
+        int width = getAvailableImageWidth();
+        int generation = renderGeneration;
+        renderExecutor.execute(() -> {
+            BufferedImage image = null;
+            if (generation == renderGeneration) {
+                image = decoder.decode(received, length, width);
+            }
+            BufferedImage partialImage = (image != null) ? ImageView.scaleToWidth(image, width) : null;
+
+            SwingUtilities.invokeLater(() -> {
+                partialImageDecoding = false;
+                if (partialImage == null || generation != renderGeneration) {
+                    return;
+                }
+
+                /* keep the position the user scrolled to */
+                Point viewPosition = getViewport().getViewPosition();
+                showView(createImageView(null, partialImage, false));
+                getViewport().setViewPosition(viewPosition);
+            });
+        });
+    }
+
+    /**
+     * Displays the image content in the image view. The image is decoded
+     * straight from memory, subsampled to the width of the view and scaled
+     * in the background. The decoded image is kept in the image cache for
+     * the clipboard.
+     *
+     * @param content The image content to display
+     *
+     * @param generation The render generation of the content
+     *
+     * @param viewPosition The position to scroll the image view to
+     */
+    private void showImageView(GopherMenu content, int generation, Point viewPosition) {
+        int width = getAvailableImageWidth();
+        renderExecutor.execute(() -> {
+            if (generation != renderGeneration) {
+                return;
+            }
+
+            BufferedImage image;
             try {
-                /* try to identify the file extension */
-                String imageFileExt = "." + contentType.getFileExt();
+                image = ImageView.scaleToWidth(ImageCache.INSTANCE.getImage(content, width), width);
+            } catch (IOException ex) {
+                SwingUtilities.invokeLater(() -> {
+                    if (generation == renderGeneration) {
+                        /* display exception cause as text inside the view */
+                        showView(viewPane);
+                        viewPane.setContentType("text/plain");
+                        viewPane.setText("Failed to display the image:\n" + ex.getMessage());
+                    }
+                });
+                return;
+            }
+
+            SwingUtilities.invokeLater(() -> {
+                /* another page was shown in the meantime */
+                if (generation != renderGeneration) {
+                    return;
+                }
+
+                showView(createImageView(content, image, false));
+                getViewport().setViewPosition(viewPosition);
+                renderedPage = content;
+            });
+        });
+    }
+
+    /**
+     * Switches the displayed image between the size fitted to the view
+     * and its actual size, only the latter decodes every pixel
+     *
+     * @param content The image content displayed
+     *
+     * @param actualSize true to display the image at its actual size
+     */
+    private void zoomImage(GopherMenu content, boolean actualSize) {
+        int width = getAvailableImageWidth();
+        int generation = renderGeneration;
+        renderExecutor.execute(() -> {
+            BufferedImage image;
+            try {
+                image = actualSize ? ImageCache.INSTANCE.getImage(content)
+                        : ImageView.scaleToWidth(ImageCache.INSTANCE.getImage(content, width), width);
+            } catch (IOException ex) {
+                System.out.println("Failed to zoom the image: " + ex.getMessage());
+                return;
+            }
 
-                /* try to determine the filetype from the url */
-                String imageUrl = content.getUrl().getUrlString();
-                if (imageUrl.substring(imageUrl.length() - 4).equals(".")) {
-                    imageFileExt = imageUrl.substring(imageUrl.length() - 3);
+            SwingUtilities.invokeLater(() -> {
+                if (generation == renderGeneration && renderedPage == content) {
+                    showView(createImageView(content, image, actualSize));
                 }
-                if (imageUrl.substring(imageUrl.length() - 5).equals(".")) {
-                    imageFileExt = imageUrl.substring(imageUrl.length() - 4);
+            });
+        });
+    }
+
+    /**
+     * Creates the view for an image, a click on the image switches
+     * between fitted and actual size when the image was reduced
+     *
+     * @param content The image content or null while it is received
+     *
+     * @param image The decoded image to display
+     *
+     * @param actualSize true when the image is displayed at its actual size
+     *
+     * @return The image view
+     */
+    private ImageView createImageView(GopherMenu content, BufferedImage image, boolean actualSize) {
+        ImageView imageView = new ImageView(image, actualSize);
+        imageView.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent evt) {
+                if (content != null && evt.getButton() == MouseEvent.BUTTON1
+                        && (actualSize || image.getWidth() < getImageWidth(content))) {
+                    zoomImage(content, !actualSize);
                 }
+            }
 
-                /* write the image content to file */
-                File tempImageFile = File.createTempFile("gopherimagefile", imageFileExt);
-                try (FileOutputStream outputStream = new FileOutputStream(tempImageFile)) {
+            @Override
+            public void mouseReleased(MouseEvent evt) {
+                showPageMenu(evt, null);
+            }
+        });
+        return imageView;
+    }
+
+    /**
+     * Returns the width of an image without decoding it
+     *
+     * @param content The image content
+     *
+     * @return The width or 0 when it is unknown
+     */
+    private static int getImageWidth(GopherMenu content) {
+        try {
+            return ImageDecoder.getWidth(content.getByteArray());
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the width available for images fitted to the view,
+     * leaving room for the vertical scrollbar
+     *
+     * @return The width in pixels
+     */
+    private int getAvailableImageWidth() {
+        int width = getViewport().getExtentSize().width;
+        if (width <= 0) {
+            return DEFAULT_IMAGE_WIDTH;
+        }
+        if (!getVerticalScrollBar().isVisible()) {
+            width -= getVerticalScrollBar().getPreferredSize().width;
+        }
+        return Math.max(1, width - ImageView.HORIZONTAL_INSETS);
+    }
+
+    /**
+     * Displays the large text content in the text view. The content is
+     * written to a temporary file in the background, the view then maps
+     * the file and indexes its lines.
+     *
+     * @param content The text content to display
+     *
+     * @param generation The render generation of the content
+     *
+     * @param viewPosition The position to scroll the text view to
+     */
+    private void showTextView(GopherMenu content, int generation, Point viewPosition) {
+        renderExecutor.execute(() -> {
+            if (generation != renderGeneration) {
+                return;
+            }
+
+            File textFile;
+            try {
+                textFile = File.createTempFile("gophietextfile", ".txt");
+                textFile.deleteOnExit();
+                try (FileOutputStream outputStream = new FileOutputStream(textFile)) {
                     outputStream.write(content.getByteArray());
                 }
+            } catch (IOException ex) {
+                System.out.println("Failed to write text file: " + ex.getMessage());
+                return;
+            }
 
-                /* determine image size and rescale */
-                String imageHtmlCode = "<img src=\"" + tempImageFile.toURI()
-                        .toURL().toExternalForm() + "\" />";
+            SwingUtilities.invokeLater(() -> {
+                /* another page was shown in the meantime */
+                if (generation != renderGeneration) {
+                    textFile.delete();
+                    return;
+                }
 
                 try {
-                    BufferedImage bufferedImage = ImageIO.read(tempImageFile);
-                    int width = bufferedImage.getWidth();
-                    int height = bufferedImage.getHeight();
-                    if (width > 800) {
-                        height = (height / (width / 800));
-                        imageHtmlCode = "<img src=\"" + tempImageFile.toURI()
-                                .toURL().toExternalForm() + "\" "
-                                + "width=\"800\" height=" + height + "\""
-                                + "/>";
-                    }
+                    Charset charset = Charset.isSupported(GopherMenu.getCharset())
+                            ? Charset.forName(GopherMenu.getCharset()) : Charset.defaultCharset();
+                    showView(new TextView(textFile, charset, textFont, indexExecutor));
+                    getViewport().setViewPosition(viewPosition);
+                    renderedPage = content;
                 } catch (IOException ex) {
-                    /* failed to determine image size */
-                    System.out.println("Failed to determine image size: " + ex.getMessage());
+                    textFile.delete();
+                    viewPane.setContentType("text/plain");
+                    viewPane.setText("Failed to display the text:\n" + ex.getMessage());
                 }
+            });
+        });
+    }
 
-                /* display content as an image */
-                viewPane.setContentType("text/html");
-                viewPane.setText(imageHtmlCode);
-            } catch (IOException ex) {
-                /* display exception cause as text inside the view */
-                viewPane.setContentType("text/plain");
-                viewPane.setText("Failed to display the image:\n" + ex.getMessage());
+    /**
+     * Displays one of the views, the line numbers of the header
+     * pane only belong to the view pane
+     *
+     * @param view The view to display
+     */
+    private void showView(JComponent view) {
+        Component previous = getViewport().getView();
+        if (previous == view) {
+            return;
+        }
+
+        if (previous == menuView) {
+            hoveredItem = null;
+            menuView.setItems(Collections.emptyList());
+        }
+        getViewport().setView(view);
+        setRowHeaderView(view == viewPane ? headerPane : null);
+
+        /* only images at their actual size and long lines
+            of text files are scrolled sideways */
+        setHorizontalScrollBarPolicy(view instanceof ImageView || view instanceof TextView
+                ? JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED : JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+
+        /* a text view not kept for the history is no longer needed */
+        if (previous instanceof TextView && !isKept(previous)) {
+            ((TextView) previous).dispose();
+        }
+    }
+
+    /**
+     * Returns whether a view is kept for the history
+     *
+     * @param view The view to check
+     *
+     * @return true when the view is kept
+     */
+    private boolean isKept(Component view) {
+        for (ViewState state : renderedPages.values()) {
+            if (state.view == view) {
+                return true;
             }
-        } else {
-            /* display content as plain text */
-            viewPane.setContentType("text/plain");
-            viewPane.setText(content.getSourceCode().replace("\n.\r\n", ""));
         }
+        return false;
     }
 
-    public void showGopherPage(GopherMenu page) {
-        /* set the current local gopher page */
-        currentPage = page;
+    /**
+     * Keeps the rendering of the displayed page for moving back
+     * and forward in the history
+     */
+    private void storeViewState() {
+        HistoryEntry entry = renderedEntry;
+        renderedEntry = null;
+        if (renderedPage == null || entry == null || maximumRenderedPages <= 0) {
+            renderedPage = null;
+            return;
+        }
 
-        /* set current page to the page menu */
-        pageMenu.setCurrentPage(page);
+        JComponent view = (JComponent) getViewport().getView();
+        if (view instanceof ImageView && ((ImageView) view).isActualSize()) {
+            /* images at full resolution are too large to keep */
+            renderedPage = null;
+            return;
+        }
+        renderedPages.put(entry, new ViewState(view, view == viewPane ? headerPane : null,
+                linkItems, getViewport().getViewPosition()));
+        renderedPage = null;
+
+        /* the panes stay on display until the next page is ready */
+        panesKept = (view == viewPane);
 
-        /* create the headers */
-        String renderedHeader = "<table cellspacing=\"0\" cellpadding=\"2\">";
-        String renderedContent = "<table cellspacing=\"0\" cellpadding=\"2\">";
-
-        int lineNumber = 1;
-        for (GopherMenuItem item : page.getItemList()) {
-            /* set the content for the row header */
-            renderedHeader += "<tr><td class=\"lineNumber\">" + lineNumber + "</td>"
-                    + "<td><div class=\"itemIcon\">"
-                    + this.getGopherItemTypeIcon(item.getItemType())
-                    + "</div></td></tr>";
-
-            /* set the content for the text view */
-            String itemTitle = item.getUserDisplayString().replace(" ", "&nbsp;");
-            String itemCode = "<span class=\"text\">" + itemTitle + "</span>";
-
-            /* build links for anything other than infromation items */
-            if (item.getItemType() != GopherMenuItemType.INFORMATION) {
-                /* create the link for this item */
-                itemCode = "<a href=\"" + item.getUrlString() + "\">" + itemTitle + "</a>";
+        /* drop the least recently shown pages */
+        Iterator<ViewState> iterator = renderedPages.values().iterator();
+        while (renderedPages.size() > maximumRenderedPages) {
+            ViewState state = iterator.next();
+            iterator.remove();
+            if (state.view instanceof TextView && state.view != view) {
+                ((TextView) state.view).dispose();
             }
+        }
+    }
 
-            /* create the item table row */
-            renderedContent += "<tr><td class=\"item\">" + itemCode + "</td></tr>";
+    /**
+     * Tags the displayed page with its entry in the history, the
+     * rendering is kept under it once another page is shown
+     *
+     * @param historyEntry The history entry of the displayed page
+     */
+    public void setHistoryEntry(HistoryEntry historyEntry) {
+        renderedEntry = historyEntry;
+    }
 
-            lineNumber++;
+    /**
+     * Drops the kept rendering of a page
+     *
+     * @param historyEntry The history entry of the page
+     */
+    public void discardViewState(HistoryEntry historyEntry) {
+        ViewState state = renderedPages.remove(historyEntry);
+        if (state != null && state.view instanceof TextView && state.view != getViewport().getView()) {
+            ((TextView) state.view).dispose();
         }
+    }
+
+    /**
+     * Swaps a kept rendering of the page back in, including
+     * the scroll position
+     *
+     * @param historyEntry The history entry of the page, may be null
+     *
+     * @param page The page to display
+     *
+     * @return true when the page was restored
+     */
+    private boolean restoreViewState(HistoryEntry historyEntry, GopherMenu page) {
+        ViewState state = (historyEntry != null) ? renderedPages.remove(historyEntry) : null;
+        if (state == null) {
+            return false;
+        }
+
+        /* abandon everything still rendering */
+        renderGeneration++;
+        streamingUrl = null;
+        streamedItemCount = 0;
+        streamedTextLength = 0;
+        discardStreamedImage();
+        linkItems = state.linkItems;
+
+        if (state.view == menuView) {
+            menuView.setItems(page.getItemList());
+        } else if (state.headerPane != null) {
+            viewPane = (JEditorPane) state.view;
+            headerPane = state.headerPane;
+            panesKept = false;
+        }
+        showView(state.view);
+        getViewport().setViewPosition(state.viewPosition);
+        renderedPage = page;
+        return true;
+    }
+
+    /**
+     * Drops the data of the image received last and releases its
+     * decoder once a decode still running for it is finished
+     */
+    private void discardStreamedImage() {
+        streamedImageData = null;
+        decodedImageLength = 0;
+        if (partialImageDecoder != null) {
+            renderExecutor.execute(partialImageDecoder::dispose);
+            partialImageDecoder = null;
+        }
+    }
+
+    /**
+     * Replaces the panes by new ones when the current ones are
+     * kept for the history, so they are not changed anymore
+     */
+    private void releasePanes() {
+        if (!panesKept) {
+            return;
+        }
+        panesKept = false;
+
+        boolean displayed = (getViewport().getView() == viewPane);
+        viewPane = createViewPane();
+        headerPane = createHeaderPane();
+        if (displayed) {
+            getViewport().setView(viewPane);
+            setRowHeaderView(headerPane);
+        }
+    }
 
-        /* set content type and add content to view */
-        viewPane.setContentType("text/html");
-        viewPane.setText(renderedContent + "</table>");
+    /**
+     * Informs the listeners and the page menu that the mouse
+     * entered a link
+     *
+     * @param urlValue The url of the link
+     *
+     * @param itemObject The gopher item of the link, if known
+     */
+    private void linkEntered(String urlValue, GopherMenuItem itemObject) {
+        pageMenu.setLinkTarget(itemObject);
 
-        /* set content type and add content to header */
-        headerPane.setContentType("text/html");
-        headerPane.setText(renderedHeader + "</table>");
+        /* let the listeners prepare for a click on the link */
+        for (NavigationInputListener inputListener : inputListenerList) {
+            inputListener.linkEntered(urlValue, itemObject);
+        }
+    }
+
+    /**
+     * Informs the listeners and the page menu that the mouse
+     * left the link
+     */
+    private void linkExited() {
+        pageMenu.setLinkTarget(null);
+
+        for (NavigationInputListener inputListener : inputListenerList) {
+            inputListener.linkExited();
+        }
+    }
 
-        /* scroll the view pane to the top */
-        viewPane.setCaretPosition(0);
+    /**
+     * Requests the target of a link from the listeners
+     *
+     * @param urlValue The url of the link
+     *
+     * @param itemObject The gopher item of the link, if known
+     */
+    private void linkActivated(String urlValue, GopherMenuItem itemObject) {
+        for (NavigationInputListener inputListener : inputListenerList) {
+            inputListener.addressRequested(urlValue, itemObject);
+        }
+    }
+
+    /**
+     * Shows the page menu if the mouse button is the configured trigger
+     *
+     * @param evt The mouse event
+     *
+     * @param selectedText The text selected in the view
+     */
+    private void showPageMenu(MouseEvent evt, String selectedText) {
+        /* get the trigger button for the menu from config
+            (right mouse button id is usually #3) */
+        int menuTriggerButtonId = ConfigurationManager.getConfigFile().getInt("Navigation", "MENU_MOUSE_TRIGGERBUTTON", 3);
+
+        if (evt.getButton() == menuTriggerButtonId) {
+            /* trigger hit, show the page menu and also
+                make sure to pass the text selection before */
+            pageMenu.setSelectedText(selectedText);
+
+            /* show the menu */
+            pageMenu.show(evt.getComponent(), evt.getX(), evt.getY());
+        }
+    }
+
+    /**
+     * Renders the table rows for a single gopher item
+     *
+     * @param renderedHeader Builder for the header rows
+     *
+     * @param renderedContent Builder for the content rows
+     *
+     * @param renderedLinks Receives the item for the url of its link
+     *
+     * @param item The gopher item to render
+     *
+     * @param lineNumber The line number of the item
+     */
+    private void renderItem(StringBuilder renderedHeader, StringBuilder renderedContent,
+            Map<String, GopherMenuItem> renderedLinks, GopherMenuItem item, int lineNumber) {
+        /* set the content for the row header */
+        renderedHeader.append("<tr><td class=\"lineNumber\">").append(lineNumber).append("</td>")
+                .append("<td><div class=\"itemIcon\">")
+                .append(this.getGopherItemTypeIcon(item.getItemType()))
+                .append("</div></td></tr>");
+
+        /* set the content for the text view */
+        String itemTitle = item.getUserDisplayString().replace(" ", "&nbsp;");
+        String itemCode = "<span class=\"text\">" + itemTitle + "</span>";
+
+        /* build links for anything other than infromation items */
+        if (item.getItemType() != GopherMenuItemType.INFORMATION) {
+            /* create the link for this item, later items with the
+                same url take precedence */
+            String itemUrl = item.getUrlString();
+            itemCode = "<a href=\"" + itemUrl + "\">" + itemTitle + "</a>";
+            renderedLinks.put(itemUrl, item);
+        }
+
+        /* create the item table row */
+        renderedContent.append("<tr><td class=\"item\">").append(itemCode).append("</td></tr>");
     }
 
     private void configureStyle() {
@@ -195,29 +1001,22 @@ public class PageView extends JScrollPane {
     }
 
     public PageView(MainWindow parent) {
-
-        ColorPalette colors = ConfigurationManager.getColors();
-
-        Color textColor = colors.getPageText();
-        Color backgroundColor = colors.getPageBackground();
-
         /* instanciate input listener list */
         inputListenerList = new ArrayList<>();
 
+        /* a single thread renders pages one after the other,
+            another one indexes the lines of large text */
+        renderExecutor = TransportExecutors.newBoundedPool("gophie-render", 1);
+        indexExecutor = TransportExecutors.newBoundedPool("gophie-index", 1);
+
         /* create the editor kit instance */
         editorKit = new HTMLEditorKit();
 
+        /* try to open the font for icon display */
+        textFont = new ConsoleFont(ConfigurationManager.getConfigFile().getFloat("Fonts", "PAGE_SIZE", 17f));
+
         /* create the editor pane */
-        viewPane = new JEditorPane();
-        viewPane.setEditable(false);
-        viewPane.setBackground(backgroundColor);
-        viewPane.setForeground(textColor);
-        viewPane.setBorder(new EmptyBorder(10, 4, 8, 16));
-        viewPane.setEditorKit(editorKit);
-        viewPane.setCursor(new Cursor(Cursor.TEXT_CURSOR));
-        viewPane.setSelectionColor(colors.getPageSelection());
-
-        viewPane.setDragEnabled(false);
+        viewPane = createViewPane();
         getViewport().add(viewPane);
 
         /* adjust the scrollbars */
@@ -225,13 +1024,7 @@ public class PageView extends JScrollPane {
         setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
 
         /* create the header pane with line numbers and icons */
-        headerPane = new JEditorPane();
-        headerPane.setEditable(false);
-        headerPane.setBackground(backgroundColor);
-        headerPane.setForeground(textColor);
-        headerPane.setBorder(new EmptyBorder(10, 12, 8, 2));
-        headerPane.setEditorKit(editorKit);
-        headerPane.setDragEnabled(false);
+        headerPane = createHeaderPane();
         setRowHeaderView(headerPane);
 
         /* configure the style of the header and the view */
@@ -241,74 +1034,171 @@ public class PageView extends JScrollPane {
         pageMenu = new PageMenu();
         pageMenu.addPageMenuEventListener((PageMenuEventListener) parent);
         pageMenu.addPageMenuEventListener(parent.getDownloadRequester());
-        viewPane.add(this.pageMenu);
-        viewPane.addMouseListener(new MouseAdapter() {
+        add(this.pageMenu);
+
+        /* rendered pages kept for moving back and forward */
+        maximumRenderedPages = ConfigurationManager.getConfigFile().getInt("Navigation", "RENDERED_PAGES", DEFAULT_RENDERED_PAGES);
+        renderedPages = new LinkedHashMap<>(16, 0.75f, true);
+
+        /* create the menu view for large menus, links are hit
+            by the row below the mouse */
+        virtualMenuRows = ConfigurationManager.getConfigFile().getInt("Navigation", "VIRTUAL_MENU_ROWS", DEFAULT_VIRTUAL_MENU_ROWS);
+        textViewerSize = (long) ConfigurationManager.getConfigFile().getInt("Navigation", "TEXT_VIEWER_SIZE", DEFAULT_TEXT_VIEWER_SIZE) * 1024;
+        menuView = new MenuView(this, textFont);
+        MouseAdapter menuMouseAdapter = new MouseAdapter() {
+            @Override
+            public void mouseMoved(MouseEvent evt) {
+                GopherMenuItem item = menuView.getLinkAt(evt.getY());
+                if (item == hoveredItem) {
+                    return;
+                }
+
+                if (hoveredItem != null) {
+                    linkExited();
+                }
+                hoveredItem = item;
+                if (item != null) {
+                    linkEntered(item.getUrlString(), item);
+                }
+                menuView.setCursor(Cursor.getPredefinedCursor(item != null
+                        ? Cursor.HAND_CURSOR : Cursor.DEFAULT_CURSOR));
+            }
+
+            @Override
+            public void mouseExited(MouseEvent evt) {
+                if (hoveredItem != null) {
+                    hoveredItem = null;
+                    linkExited();
+                }
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent evt) {
+                GopherMenuItem item = menuView.getLinkAt(evt.getY());
+                if (item != null && evt.getButton() == MouseEvent.BUTTON1) {
+                    linkActivated(item.getUrlString(), item);
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent evt) {
+                showPageMenu(evt, null);
+            }
+        };
+        menuView.addMouseListener(menuMouseAdapter);
+        menuView.addMouseMotionListener(menuMouseAdapter);
+
+        /* thumbnails of image items in menus are optional */
+        thumbnailLoader = new ThumbnailLoader(menuView::repaint);
+        thumbnailsShown = ConfigurationManager.getConfigFile().getBool("Navigation", "THUMBNAILS", false);
+        menuView.setThumbnailLoader(thumbnailsShown ? thumbnailLoader : null);
+        pageMenu.setThumbnailsShown(thumbnailsShown);
+    }
+
+    /**
+     * Shows or hides the thumbnails of image items in menus and
+     * displays the current menu again accordingly
+     *
+     * @param shown true to show thumbnails
+     */
+    public void setThumbnailsShown(boolean shown) {
+        thumbnailsShown = shown;
+        menuView.setThumbnailLoader(shown ? thumbnailLoader : null);
+        pageMenu.setThumbnailsShown(shown);
+
+        /* menus kept for the history were laid out for the other mode */
+        renderedPages.keySet().removeIf((entry) -> entry.getContentType() == GopherMenuItemType.GOPHERMENU);
+        if (currentPage != null && renderedPage == currentPage) {
+            HistoryEntry entry = renderedEntry;
+            renderedPage = null;
+            showGopherPage(currentPage, null);
+            renderedEntry = entry;
+        }
+    }
+
+    /**
+     * Creates the editor pane displaying the page content
+     *
+     * @return The editor pane
+     */
+    private JEditorPane createViewPane() {
+        ColorPalette colors = ConfigurationManager.getColors();
+
+        JEditorPane pane = new JEditorPane();
+        pane.setEditable(false);
+        pane.setBackground(colors.getPageBackground());
+        pane.setForeground(colors.getPageText());
+        pane.setBorder(new EmptyBorder(10, 4, 8, 16));
+        pane.setEditorKit(editorKit);
+        pane.setCursor(new Cursor(Cursor.TEXT_CURSOR));
+        pane.setSelectionColor(colors.getPageSelection());
+        pane.setDragEnabled(false);
+
+        /* text appended while a document is received must
+            not move the caret and scroll along with it */
+        if (pane.getCaret() instanceof DefaultCaret) {
+            ((DefaultCaret) pane.getCaret()).setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
+        }
+
+        pane.addMouseListener(new MouseAdapter() {
             /* handle the popup trigger for this document */
             public void mouseReleased(MouseEvent evt) {
-                /* get the trigger button for the menu from config
-                    (right mouse button id is usually #3) */
-                int menuTriggerButtonId = ConfigurationManager.getConfigFile().getInt("Navigation", "MENU_MOUSE_TRIGGERBUTTON", 3);
-
-                if (evt.getButton() == menuTriggerButtonId) {
-                    /* trigger hit, show the page menu and also
-                        make sure to pass the text selection before */
-                    pageMenu.setSelectedText(viewPane.getSelectedText());
-
-                    /* show the menu */
-                    pageMenu.show(viewPane,
-                            (int) evt.getPoint().getX(),
-                            (int) evt.getPoint().getY());
-                }
+                showPageMenu(evt, pane.getSelectedText());
             }
         });
 
         /* report any links hits as address request to the listeners */
-        viewPane.addHyperlinkListener((HyperlinkEvent e) -> {
+        pane.addHyperlinkListener((HyperlinkEvent e) -> {
             /* get the url of that link */
             String urlValue = e.getDescription();
 
-            /* determine the content type of the link target */
-            GopherMenuItem itemObject = null;
-            if (currentPage != null) {
-                /* determine the content type of the gopher item
+            /* determine the content type of the link target
                 by the definition of it in the gopher menu */
-                for (GopherMenuItem contentItem : currentPage.getItemList()) {
-                    if (contentItem.getUrlString().equals(urlValue)) {
-                        itemObject = contentItem;
-                    }
-                }
-            }
+            GopherMenuItem itemObject = linkItems.get(urlValue);
 
             /* pass the active link item to the popup menu */
             if (e.getEventType() == HyperlinkEvent.EventType.ENTERED) {
-                pageMenu.setLinkTarget(itemObject);
+                linkEntered(urlValue, itemObject);
             }
 
             /* reset the link target for the popup menu */
             if (e.getEventType() == HyperlinkEvent.EventType.EXITED) {
-                pageMenu.setLinkTarget(null);
+                linkExited();
             }
 
             /* handle link activation (aka left-click) */
             if (e.getEventType() == HyperlinkEvent.EventType.ACTIVATED) {
-                /* execute the handler */
-                for (NavigationInputListener inputListener : inputListenerList) {
-                    inputListener.addressRequested(urlValue, itemObject);
-                }
+                linkActivated(urlValue, itemObject);
             }
         });
 
-        /* try to open the font for icon display */
-        textFont = new ConsoleFont(ConfigurationManager.getConfigFile().getFloat("Fonts", "PAGE_SIZE", 17f));
-
         /* apply the font settings to the view pane */
-        viewPane.putClientProperty(JEditorPane.HONOR_DISPLAY_PROPERTIES, Boolean.TRUE);
-        viewPane.setFont(textFont);
+        pane.putClientProperty(JEditorPane.HONOR_DISPLAY_PROPERTIES, Boolean.TRUE);
+        pane.setFont(textFont);
+        return pane;
+    }
+
+    /**
+     * Creates the editor pane displaying line numbers and icons
+     *
+     * @return The editor pane
+     */
+    private JEditorPane createHeaderPane() {
+        ColorPalette colors = ConfigurationManager.getColors();
+
+        JEditorPane pane = new JEditorPane();
+        pane.setEditable(false);
+        pane.setBackground(colors.getPageBackground());
+        pane.setForeground(colors.getPageText());
+        pane.setBorder(new EmptyBorder(10, 12, 8, 2));
+        pane.setEditorKit(editorKit);
+        pane.setDragEnabled(false);
 
         /* apply the font settings to the header pane */
-        headerPane.putClientProperty(JEditorPane.HONOR_DISPLAY_PROPERTIES, Boolean.TRUE);
-        headerPane.setFont(textFont);
-        headerPane.setHighlighter(null);
+        pane.putClientProperty(JEditorPane.HONOR_DISPLAY_PROPERTIES, Boolean.TRUE);
+        pane.setFont(textFont);
+        pane.setHighlighter(null);
+        return pane;
     }
 
     public void selectAllText() {
@@ -379,4 +1269,34 @@ public class PageView extends JScrollPane {
 
         return result;
     }
+
+    /**
+     * Image data that is decoded directly from its array
+     */
+    private static class ImageData extends ByteArrayOutputStream {
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * Rendering of a page that was displayed before
+     */
+    private static class ViewState {
+
+        /* the view and the header pane of the view pane */
+        private final JComponent view;
+        private final JEditorPane headerPane;
+        private final Map<String, GopherMenuItem> linkItems;
+        private final Point viewPosition;
+
+        ViewState(JComponent view, JEditorPane headerPane,
+                Map<String, GopherMenuItem> linkItems, Point viewPosition) {
+            this.view = view;
+            this.headerPane = headerPane;
+            this.linkItems = linkItems;
+            this.viewPosition = viewPosition;
+        }
+    }
 }
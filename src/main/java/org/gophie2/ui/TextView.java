@@ -0,0 +1,320 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.ui;
+
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Toolkit;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.border.EmptyBorder;
+
+import org.gophie2.config.ColorPalette;
+import org.gophie2.config.ConfigurationManager;
+
+/**
+ * Displays large text files without loading them into the heap. The file
+ * is memory mapped, the offsets of its lines are indexed in the background
+ * and only the lines inside the visible area are decoded and painted.
+ */
+public class TextView extends JComponent implements Scrollable {
+
+    private static final long serialVersionUID = -4226187327416860372L;
+
+    /* vertical space around the text of a line */
+    private static final int LINE_PADDING = 2;
+
+    /* number of columns a tab advances to */
+    private static final int TAB_SIZE = 8;
+
+    /* number of lines indexed before they are displayed */
+    private static final int INDEX_BATCH = 65536;
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final Charset charset;
+    private final int lineHeight;
+
+    /* start offsets of the lines, the entry after the last
+        line is the start of the line that follows it */
+    private int[] lineStarts;
+    private int lineCount;
+
+    /* width of the widest line in pixels */
+    private int textWidth;
+
+    private volatile boolean disposed;
+
+    /**
+     * Constructs the viewer for a text file and starts indexing its lines
+     *
+     * @param file The text file to display, deleted when disposed
+     *
+     * @param charset The charset to decode the text with
+     *
+     * @param textFont The font of the text
+     *
+     * @param indexExecutor The executor indexing the lines
+     *
+     * @throws IOException when the file cannot be mapped
+     */
+    public TextView(File file, Charset charset, Font textFont, ExecutorService indexExecutor) throws IOException {
+        this.file = file;
+        this.charset = charset;
+        this.lineStarts = new int[]{0};
+        this.lineCount = 0;
+        this.textWidth = 0;
+        this.disposed = false;
+
+        /* the mapping stays valid after the channel is closed */
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        ColorPalette colors = ConfigurationManager.getColors();
+        setFont(textFont);
+        setOpaque(true);
+        setBackground(colors.getPageBackground());
+        setForeground(colors.getPageText());
+        setBorder(new EmptyBorder(10, 18, 8, 16));
+        lineHeight = getFontMetrics(textFont).getHeight() + LINE_PADDING;
+
+        indexExecutor.execute(this::indexLines);
+    }
+
+    /**
+     * Stops indexing and deletes the file
+     */
+    public void dispose() {
+        disposed = true;
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Scans the file for line breaks and publishes the lines found
+     * in batches, so the first lines show up right away. The line with
+     * the most columns is remembered to size the view horizontally.
+     */
+    private void indexLines() {
+        ByteBuffer data = buffer.duplicate();
+        int limit = data.limit();
+        int[] starts = new int[1024];
+        int count = 0;
+        int columns = 0;
+        int widestLine = 0;
+        int widestColumns = -1;
+
+        for (int offset = 0; offset < limit && !disposed; offset++) {
+            byte value = data.get(offset);
+            if (value == '\n') {
+                if (columns > widestColumns) {
+                    widestColumns = columns;
+                    widestLine = count;
+                }
+                columns = 0;
+                if (count + 1 >= starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                }
+                starts[++count] = offset + 1;
+                if (count % INDEX_BATCH == 0) {
+                    publish(starts, count, widestLine);
+                }
+            } else if (value == '\t') {
+                columns += TAB_SIZE - columns % TAB_SIZE;
+            } else if ((value & 0xc0) != 0x80) {
+                /* continuation bytes of utf-8 characters take no column */
+                columns++;
+            }
+        }
+        if (columns > widestColumns) {
+            widestLine = count;
+        }
+
+        /* add the last line unless it is empty */
+        if (count == 0 || starts[count] < limit) {
+            if (count + 1 >= starts.length) {
+                starts = Arrays.copyOf(starts, starts.length + 1);
+            }
+            starts[++count] = limit + 1;
+        }
+
+        /* drop the line with the dot ending a gopher response */
+        if (count > 0 && ".".equals(decodeLine(data, starts[count - 1], starts[count]))) {
+            count--;
+        }
+        publish(starts, count, Math.min(widestLine, Math.max(0, count - 1)));
+    }
+
+    private void publish(int[] starts, int count, int widestLine) {
+        SwingUtilities.invokeLater(() -> {
+            lineStarts = starts;
+            lineCount = count;
+            if (count > 0) {
+                String widest = expandTabs(decodeLine(buffer.duplicate(), starts[widestLine], starts[widestLine + 1]));
+                textWidth = getFontMetrics(getFont()).stringWidth(widest);
+            }
+            revalidate();
+            repaint();
+        });
+    }
+
+    /**
+     * Decodes a line without its line break
+     *
+     * @param data The mapped text
+     *
+     * @param start The offset of the first byte of the line
+     *
+     * @param next The offset of the line that follows
+     *
+     * @return The text of the line
+     */
+    private String decodeLine(ByteBuffer data, int start, int next) {
+        int end = Math.min(next - 1, data.limit());
+        if (end > start && data.get(end - 1) == '\r') {
+            end--;
+        }
+
+        byte[] bytes = new byte[Math.max(0, end - start)];
+        ByteBuffer line = data.duplicate();
+        line.position(start);
+        line.get(bytes);
+        return new String(bytes, charset);
+    }
+
+    private static String expandTabs(String line) {
+        if (line.indexOf('\t') < 0) {
+            return line;
+        }
+
+        StringBuilder result = new StringBuilder(line.length() + TAB_SIZE);
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                do {
+                    result.append(' ');
+                } while (result.length() % TAB_SIZE != 0);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        Graphics2D g = (Graphics2D) graphics.create();
+        try {
+            /* render text the way the desktop does */
+            Map<?, ?> desktopHints = (Map<?, ?>) Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+            if (desktopHints != null) {
+                g.addRenderingHints(desktopHints);
+            } else {
+                g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            }
+
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+            if (lineCount == 0) {
+                return;
+            }
+
+            /* only decode the lines intersecting the clip */
+            Insets insets = getInsets();
+            int firstLine = Math.max(0, (clip.y - insets.top) / lineHeight);
+            int lastLine = Math.min(lineCount - 1, (clip.y + clip.height - insets.top) / lineHeight);
+
+            FontMetrics metrics = g.getFontMetrics(getFont());
+            g.setFont(getFont());
+            g.setColor(getForeground());
+
+            ByteBuffer data = buffer.duplicate();
+            for (int line = firstLine; line <= lastLine; line++) {
+                int top = insets.top + line * lineHeight;
+                String text = expandTabs(decodeLine(data, lineStarts[line], lineStarts[line + 1]));
+                g.drawString(text, insets.left, top + LINE_PADDING / 2 + metrics.getAscent());
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        Insets insets = getInsets();
+        long height = insets.top + (long) lineCount * lineHeight + insets.bottom;
+        return new Dimension(insets.left + textWidth + insets.right, (int) Math.min(Integer.MAX_VALUE, height));
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? lineHeight : 16;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        if (orientation == SwingConstants.VERTICAL) {
+            /* page by whole lines */
+            return Math.max(lineHeight, (visibleRect.height / lineHeight - 1) * lineHeight);
+        }
+        return visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        /* long lines scroll horizontally, short ones fill the viewport */
+        return getParent() instanceof JViewport && getParent().getWidth() > getPreferredSize().width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
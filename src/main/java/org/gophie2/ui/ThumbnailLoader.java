@@ -0,0 +1,234 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.ui;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import javax.swing.SwingUtilities;
+
+import org.gophie2.config.ConfigurationManager;
+import org.gophie2.net.CachingTransport;
+import org.gophie2.net.DiskCache;
+import org.gophie2.net.GopherMenu;
+import org.gophie2.net.GopherMenuItem;
+import org.gophie2.net.GopherNetworkException;
+import org.gophie2.net.PageCache;
+import org.gophie2.net.Transport;
+import org.gophie2.net.TransportExecutors;
+import org.gophie2.net.TransportFactory;
+import org.gophie2.ui.util.ImageDecoder;
+
+/**
+ * Loads thumbnails for the image items of gopher menus. Only the items
+ * currently visible are requested, items that scrolled out of view are
+ * dropped before they are fetched. Images are fetched a few at a time
+ * behind all other requests to their host, decoded subsampled by a worker
+ * pool and kept as small thumbnails in memory and in the disk cache.
+ */
+public class ThumbnailLoader {
+
+    /* width and height of the box thumbnails are fitted into */
+    public static final int THUMBNAIL_SIZE = 64;
+
+    /* default number of images fetched at the same time */
+    private static final int DEFAULT_THUMBNAIL_FETCHES = 2;
+
+    /* number of thumbnails kept in memory */
+    private static final int MEMORY_CACHE_ENTRIES = 512;
+
+    /* number of threads decoding images */
+    private static final int DECODE_THREADS = 2;
+
+    /* images that could not be fetched are tried again after this time */
+    private static final long RETRY_MILLIS = 60000;
+
+    /* prefix of the thumbnail keys in the disk cache */
+    private static final String DISK_CACHE_PREFIX = "thumbnail ";
+
+    private final Runnable loadedListener;
+    private final Transport transport;
+    private final ExecutorService fetchExecutor;
+    private final ExecutorService decodeExecutor;
+
+    /* thumbnails by the url of their item, in access order */
+    private final LinkedHashMap<String, BufferedImage> thumbnails;
+
+    /* loads not finished yet and images that failed to load, the
+        latter with the time they may be tried again at */
+    private final Map<String, Future<?>> pending;
+    private final Map<String, Long> failed;
+
+    /**
+     * Constructs the thumbnail loader
+     *
+     * @param loadedListener Called on the event dispatch thread
+     * whenever a thumbnail was loaded
+     */
+    public ThumbnailLoader(Runnable loadedListener) {
+        this.loadedListener = loadedListener;
+        /* thumbnails must never compete with what the user asked for, so
+            their connections wait in the background queue of the host */
+        this.transport = new CachingTransport(TransportFactory.createBackground(), PageCache.INSTANCE);
+        this.thumbnails = new LinkedHashMap<>(64, 0.75f, true);
+        this.pending = new HashMap<>();
+        this.failed = new HashMap<>();
+
+        /* the threads limit the number of images fetched at the same time */
+        int fetches = ConfigurationManager.getConfigFile().getInt("Navigation", "THUMBNAIL_FETCHES", DEFAULT_THUMBNAIL_FETCHES);
+        this.fetchExecutor = TransportExecutors.newBoundedPool("gophie-thumbnail", fetches);
+        this.decodeExecutor = TransportExecutors.newBoundedPool("gophie-thumbnail-decode", DECODE_THREADS);
+    }
+
+    /**
+     * Returns the thumbnail of an item if it is loaded
+     *
+     * @param item The image item
+     *
+     * @return The thumbnail or null when not loaded
+     */
+    public synchronized BufferedImage getThumbnail(GopherMenuItem item) {
+        return thumbnails.get(item.getUrlString());
+    }
+
+    /**
+     * Loads the thumbnails of the visible items. Loads of items no longer
+     * visible are cancelled unless their image is already being fetched.
+     *
+     * @param visibleItems The image items currently visible
+     */
+    public synchronized void load(Collection<GopherMenuItem> visibleItems) {
+        Set<String> visibleUrls = new HashSet<>();
+        for (GopherMenuItem item : visibleItems) {
+            visibleUrls.add(item.getUrlString());
+        }
+
+        /* drop the loads of items that scrolled out of view */
+        Iterator<Map.Entry<String, Future<?>>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Future<?>> entry = iterator.next();
+            if (!visibleUrls.contains(entry.getKey())) {
+                entry.getValue().cancel(false);
+                iterator.remove();
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        failed.values().removeIf((retryTime) -> retryTime <= now);
+        for (GopherMenuItem item : visibleItems) {
+            String url = item.getUrlString();
+            if (!thumbnails.containsKey(url) && !pending.containsKey(url) && !failed.containsKey(url)) {
+                pending.put(url, fetchExecutor.submit(() -> fetch(item)));
+            }
+        }
+    }
+
+    /**
+     * Fetches the image of an item, unless its thumbnail
+     * is in the disk cache already
+     *
+     * @param item The image item
+     */
+    private void fetch(GopherMenuItem item) {
+        String url = item.getUrlString();
+        DiskCache diskCache = DiskCache.getDefault();
+        byte[] cached = (diskCache != null) ? diskCache.get(DISK_CACHE_PREFIX + url) : null;
+        if (cached != null) {
+            try {
+                loaded(url, ImageDecoder.decode(cached, 1), false);
+                return;
+            } catch (IOException | RuntimeException ex) {
+                /* fetch the image again then */
+            }
+        }
+
+        try {
+            GopherMenu image = transport.fetchAsync(url, item.getItemType()).await();
+            decodeExecutor.execute(() -> decode(url, image.getByteArray()));
+        } catch (GopherNetworkException | RuntimeException ex) {
+            /* the server may be reachable or the decoder
+                may accept the image again later */
+            failed(url, System.currentTimeMillis() + RETRY_MILLIS);
+        }
+    }
+
+    /**
+     * Decodes an image into its thumbnail
+     *
+     * @param url The url of the image
+     *
+     * @param data The encoded image
+     */
+    private void decode(String url, byte[] data) {
+        try {
+            BufferedImage image = ImageDecoder.decodeToFit(data, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+            int width = (int) Math.min(THUMBNAIL_SIZE, (long) image.getWidth() * THUMBNAIL_SIZE / Math.max(1, image.getHeight()));
+            loaded(url, ImageView.scaleToWidth(image, Math.max(1, width)), true);
+        } catch (IOException | RuntimeException ex) {
+            /* the image itself is broken, it is never tried again */
+            failed(url, Long.MAX_VALUE);
+        }
+    }
+
+    private void loaded(String url, BufferedImage thumbnail, boolean store) {
+        synchronized (this) {
+            pending.remove(url);
+            thumbnails.put(url, thumbnail);
+
+            /* drop the least recently shown thumbnails */
+            Iterator<String> iterator = thumbnails.keySet().iterator();
+            while (thumbnails.size() > MEMORY_CACHE_ENTRIES) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+
+        DiskCache diskCache = DiskCache.getDefault();
+        if (store && diskCache != null) {
+            try {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                try (ImageOutputStream imageOutput = new MemoryCacheImageOutputStream(output)) {
+                    ImageIO.write(thumbnail, "png", imageOutput);
+                }
+                diskCache.put(DISK_CACHE_PREFIX + url, output.toByteArray());
+            } catch (IOException ex) {
+                System.out.println("Failed to store thumbnail: " + ex.getMessage());
+            }
+        }
+
+        SwingUtilities.invokeLater(loadedListener);
+    }
+
+    private synchronized void failed(String url, long retryTime) {
+        pending.remove(url);
+        failed.put(url, retryTime);
+    }
+}
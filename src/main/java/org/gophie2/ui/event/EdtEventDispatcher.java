@@ -0,0 +1,290 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.ui.event;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import org.gophie2.net.Error;
+import org.gophie2.net.GopherMenu;
+import org.gophie2.net.GopherMenuItem;
+import org.gophie2.net.GopherUrl;
+import org.gophie2.net.event.TransportEventListener;
+
+/**
+ * Passes the events of a single transport request on to a listener on the
+ * event dispatch thread. Progress, text and image data events are coalesced
+ * to at most one per interval and once the request is cancelled or finished,
+ * events still queued for it are dropped.
+ */
+public class EdtEventDispatcher implements TransportEventListener {
+
+    /* minimum time between two progress events in milliseconds */
+    private static final int PROGRESS_INTERVAL = 100;
+
+    /* minimum time between two text events in milliseconds */
+    private static final int TEXT_INTERVAL = 100;
+
+    /* minimum time between two image data events in milliseconds,
+        longer as the receiver decodes the image again every time */
+    private static final int IMAGE_INTERVAL = 250;
+
+    private final TransportEventListener eventListener;
+    private final Timer progressTimer;
+    private final Timer textTimer;
+    private final Timer imageTimer;
+
+    /* set by any thread when the request is no longer of interest */
+    private volatile boolean cancelled;
+
+    /* only touched on the event dispatch thread */
+    private boolean finished;
+
+    /* latest progress not yet delivered, guarded by this */
+    private GopherUrl progressUrl;
+    private long progressByteCount;
+    private boolean progressScheduled;
+    private long lastProgressMillis;
+
+    /* text received but not yet delivered, guarded by this */
+    private GopherUrl textUrl;
+    private final StringBuilder pendingText;
+    private boolean textScheduled;
+    private long lastTextMillis;
+
+    /* image data received but not yet delivered, guarded by this */
+    private GopherUrl imageUrl;
+    private final ByteArrayOutputStream pendingImageData;
+    private boolean imageScheduled;
+    private long lastImageMillis;
+
+    /**
+     * Constructs the dispatcher
+     *
+     * @param eventListener The listener to call on the event dispatch thread
+     */
+    public EdtEventDispatcher(TransportEventListener eventListener) {
+        this.eventListener = eventListener;
+        this.cancelled = false;
+        this.finished = false;
+        this.progressScheduled = false;
+        this.lastProgressMillis = 0;
+        this.pendingText = new StringBuilder();
+        this.textScheduled = false;
+        this.lastTextMillis = 0;
+        this.pendingImageData = new ByteArrayOutputStream();
+        this.imageScheduled = false;
+        this.lastImageMillis = 0;
+
+        progressTimer = new Timer(PROGRESS_INTERVAL, (e) -> deliverProgress());
+        progressTimer.setRepeats(false);
+        textTimer = new Timer(TEXT_INTERVAL, (e) -> deliverText());
+        textTimer.setRepeats(false);
+        imageTimer = new Timer(IMAGE_INTERVAL, (e) -> deliverImageData());
+        imageTimer.setRepeats(false);
+    }
+
+    /**
+     * Drops all events of the request that were not delivered yet and
+     * ignores all further events
+     */
+    public void cancel() {
+        cancelled = true;
+        progressTimer.stop();
+        textTimer.stop();
+        imageTimer.stop();
+    }
+
+    @Override
+    public void progress(GopherUrl url, long byteCount) {
+        if (cancelled) {
+            return;
+        }
+
+        long delay;
+        synchronized (this) {
+            progressUrl = url;
+            progressByteCount = byteCount;
+            if (progressScheduled) {
+                /* the pending event will carry the latest count */
+                return;
+            }
+            progressScheduled = true;
+            delay = lastProgressMillis + PROGRESS_INTERVAL - System.currentTimeMillis();
+        }
+
+        if (delay <= 0) {
+            SwingUtilities.invokeLater(this::deliverProgress);
+        } else {
+            progressTimer.setInitialDelay((int) delay);
+            progressTimer.restart();
+        }
+    }
+
+    @Override
+    public void itemsReceived(GopherUrl url, List<GopherMenuItem> itemList) {
+        if (cancelled) {
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            if (isActive()) {
+                eventListener.itemsReceived(url, itemList);
+            }
+        });
+    }
+
+    @Override
+    public void textReceived(GopherUrl url, String text) {
+        if (cancelled) {
+            return;
+        }
+
+        long delay;
+        synchronized (this) {
+            textUrl = url;
+            pendingText.append(text);
+            if (textScheduled) {
+                /* the pending event will carry this text as well */
+                return;
+            }
+            textScheduled = true;
+            delay = lastTextMillis + TEXT_INTERVAL - System.currentTimeMillis();
+        }
+
+        if (delay <= 0) {
+            SwingUtilities.invokeLater(this::deliverText);
+        } else {
+            textTimer.setInitialDelay((int) delay);
+            textTimer.restart();
+        }
+    }
+
+    @Override
+    public void imageDataReceived(GopherUrl url, byte[] data) {
+        if (cancelled) {
+            return;
+        }
+
+        long delay;
+        synchronized (this) {
+            imageUrl = url;
+            pendingImageData.write(data, 0, data.length);
+            if (imageScheduled) {
+                /* the pending event will carry this data as well */
+                return;
+            }
+            imageScheduled = true;
+            delay = lastImageMillis + IMAGE_INTERVAL - System.currentTimeMillis();
+        }
+
+        if (delay <= 0) {
+            SwingUtilities.invokeLater(this::deliverImageData);
+        } else {
+            imageTimer.setInitialDelay((int) delay);
+            imageTimer.restart();
+        }
+    }
+
+    @Override
+    public void loaded(GopherMenu result) {
+        if (cancelled) {
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            if (isActive()) {
+                /* the listener gets all text before the result */
+                textTimer.stop();
+                deliverText();
+                finished = true;
+                progressTimer.stop();
+                imageTimer.stop();
+                eventListener.loaded(result);
+            }
+        });
+    }
+
+    @Override
+    public void failed(Error error, GopherUrl url) {
+        if (cancelled) {
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            if (isActive()) {
+                finished = true;
+                progressTimer.stop();
+                textTimer.stop();
+                imageTimer.stop();
+                eventListener.failed(error, url);
+            }
+        });
+    }
+
+    private boolean isActive() {
+        return !cancelled && !finished;
+    }
+
+    private void deliverProgress() {
+        GopherUrl url;
+        long byteCount;
+        synchronized (this) {
+            url = progressUrl;
+            byteCount = progressByteCount;
+            progressScheduled = false;
+            lastProgressMillis = System.currentTimeMillis();
+        }
+
+        if (isActive()) {
+            eventListener.progress(url, byteCount);
+        }
+    }
+
+    private void deliverText() {
+        GopherUrl url;
+        String text;
+        synchronized (this) {
+            url = textUrl;
+            text = pendingText.toString();
+            pendingText.setLength(0);
+            textScheduled = false;
+            lastTextMillis = System.currentTimeMillis();
+        }
+
+        if (isActive() && !text.isEmpty()) {
+            eventListener.textReceived(url, text);
+        }
+    }
+
+    private void deliverImageData() {
+        GopherUrl url;
+        byte[] data;
+        synchronized (this) {
+            url = imageUrl;
+            data = pendingImageData.toByteArray();
+            pendingImageData.reset();
+            imageScheduled = false;
+            lastImageMillis = System.currentTimeMillis();
+        }
+
+        if (isActive() && data.length > 0) {
+            eventListener.imageDataReceived(url, data);
+        }
+    }
+}
@@ -38,4 +38,8 @@ public interface NavigationInputListener {
     void stopRequested();
 
     void showDownloadRequested();
+
+    void linkEntered(String addressText, GopherMenuItem item);
+
+    void linkExited();
 }
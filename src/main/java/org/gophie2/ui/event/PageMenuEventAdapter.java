@@ -49,4 +49,9 @@ public class PageMenuEventAdapter implements PageMenuEventListener{
 
     }
 
+    @Override
+    public void showThumbnailsRequested(boolean shown) {
+
+    }
+
 }
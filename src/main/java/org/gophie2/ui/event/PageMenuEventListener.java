@@ -29,4 +29,6 @@ public interface PageMenuEventListener {
     void pageSaveRequested(GopherMenu page);
 
     void selectAllTextRequested();
+
+    void showThumbnailsRequested(boolean shown);
 }
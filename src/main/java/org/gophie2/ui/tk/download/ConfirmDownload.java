@@ -49,9 +49,12 @@ public class ConfirmDownload extends PageMenuEventAdapter implements Requester {
         String[] optionList = new String[]{"Open", "Save", "Dismiss"};
         messenger.showConfirm(confirmText, optionList, (int option) -> {
             if (option == 0) {
-                /* store file to download directory and open */
+                /* store file to download directory and open, ahead
+                    of the queued downloads as the user waits for it */
                 String targetFileName = ConfigurationManager.getDownloadPath() + item.getFileName();
-                downloadList.add(new DownloadItem(item, targetFileName, true));
+                DownloadItem download = new DownloadItem(item, targetFileName, true);
+                downloadList.add(download);
+                downloadList.setPriority(download, DownloadItem.PRIORITY_HIGH);
 
                 /* hide the message view */
                 messenger.setVisible(false);
@@ -81,11 +81,19 @@ public class DownloadItemRenderer extends JPanel implements ListCellRenderer<Dow
                 break;
             case ACTIVE:
                 String transferRate = DataSizeView.get(value.getBytePerSecond());
-                statusText = String.format("%s (%s/sec)", byteLoadedText, transferRate);
+                statusText = String.format("%s (%s/sec%s)", byteLoadedText, transferRate,
+                        value.getRateLimit() > 0 ? ", limited" : "");
                 break;
             case FAILED:
                 statusText = String.format("Failed (%s)", byteLoadedText);
                 break;
+            case IDLE:
+                statusText = (value.getPriority() == DownloadItem.PRIORITY_HIGH)
+                        ? "Queued first" : "Queued";
+                break;
+            case PAUSED:
+                statusText = "Paused";
+                break;
             default:
                 statusText = "Download not started";
         }
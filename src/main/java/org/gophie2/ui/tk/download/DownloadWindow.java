@@ -9,7 +9,9 @@ import javax.swing.JScrollPane;
 import javax.swing.ListSelectionModel;
 import javax.swing.event.ListSelectionEvent;
 import org.gophie2.config.ColorPalette;
+import org.gophie2.config.ConfigFile;
 import org.gophie2.config.ConfigurationManager;
+import org.gophie2.net.BandwidthLimiter;
 import org.gophie2.net.DownloadItem;
 
 import org.gophie2.net.Downloads;
@@ -45,7 +47,7 @@ public class DownloadWindow implements ActionButtonEventListener {
             @Override
             public void progressReported() {
                 DownloadItem selected = fileListView.getSelectedValue();
-                toolBar.handleSelectionChange(selected, list.hasNonActiveItems());
+                toolBar.handleSelectionChange(selected, list.hasFinishedItems());
                 frame.repaint();
             }
         });
@@ -72,7 +74,7 @@ public class DownloadWindow implements ActionButtonEventListener {
 
         fileListView.addListSelectionListener((ListSelectionEvent e) -> {
             DownloadItem selected = fileListView.getSelectedValue();
-            toolBar.handleSelectionChange(selected, list.hasNonActiveItems());
+            toolBar.handleSelectionChange(selected, list.hasFinishedItems());
         });
 
         updateList();
@@ -92,7 +94,7 @@ public class DownloadWindow implements ActionButtonEventListener {
             }
         }
         DownloadItem selected = fileListView.getSelectedValue();
-        toolBar.handleSelectionChange(selected, list.hasNonActiveItems());
+        toolBar.handleSelectionChange(selected, list.hasFinishedItems());
     }
 
     public boolean isVisible() {
@@ -116,24 +118,42 @@ public class DownloadWindow implements ActionButtonEventListener {
 
             switch (item.getStatus()) {
                 case ACTIVE:
-                    item.cancel();
+                    /* frees the slot for the next queued download */
                     list.remove(item);
                     item.deleteFile();
                     break;
                 case FAILED:
-                    item.start();
+                case PAUSED:
+                    list.resume(item);
                     break;
                 case COMPLETED:
                     item.openFileOnDesktop();
                     break;
                 case IDLE:
-                    item.start();
+                    list.pause(item);
                     break;
             }
 
         }
         if (buttonId == 1) {
-            list.clearNonActiveItems();
+            list.clearFinishedItems();
+        }
+        if (buttonId == 2) {
+            DownloadItem item = fileListView.getSelectedValue();
+            list.setPriority(item, item.getPriority() == DownloadItem.PRIORITY_HIGH
+                    ? DownloadItem.PRIORITY_NORMAL : DownloadItem.PRIORITY_HIGH);
+        }
+        if (buttonId == 3) {
+            DownloadItem item = fileListView.getSelectedValue();
+            item.setRateLimit(LimitButton.getNextRate(item.getRateLimit()));
+        }
+        if (buttonId == 4) {
+            /* change the limit of all downloads and remember it */
+            BandwidthLimiter limiter = BandwidthLimiter.getDefault();
+            limiter.setRate(LimitButton.getNextRate(limiter.getRate()));
+            ConfigFile configFile = ConfigurationManager.getConfigFile();
+            configFile.set("Network", "DOWNLOAD_RATE_LIMIT", String.valueOf(limiter.getRate() / 1024));
+            configFile.save();
         }
         updateList();
     }
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2020 malyshev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gophie2.ui.tk.download;
+
+import org.gophie2.ui.tk.buttons.ActionButton;
+import org.gophie2.ui.tk.buttons.ActionButtonEventListener;
+
+/**
+ * Cycles through the transfer rate limits of a download or of all downloads
+ */
+public class LimitButton extends ActionButton {
+
+    private static final long serialVersionUID = -3096170744615620381L;
+
+    /* limits in kilobytes per second, 0 is no limit */
+    private static final long[] LIMITS = {0, 32, 128, 512, 2048};
+
+    private final String title;
+
+    public LimitButton(ActionButtonEventListener listener, int buttonId, String title) {
+        super("", title);
+        this.title = title;
+        setButtonId(buttonId);
+        setButtonEnabled(true);
+        addEventListener(listener);
+    }
+
+    protected void applyRate(long bytesPerSecond) {
+        String limit = "unlimited";
+        if (bytesPerSecond > 0) {
+            limit = (bytesPerSecond / 1024) + " KB/s";
+        }
+        setContent("", title + ": " + limit);
+    }
+
+    /**
+     * Returns the limit that follows the current one
+     *
+     * @param bytesPerSecond The current limit, 0 for no limit
+     *
+     * @return The next limit in bytes per second
+     */
+    protected static long getNextRate(long bytesPerSecond) {
+        for (long limit : LIMITS) {
+            if (limit * 1024 > bytesPerSecond) {
+                return limit * 1024;
+            }
+        }
+        return 0;
+    }
+}
@@ -46,7 +46,10 @@ public class MainButton extends ActionButton {
                 setContent("", "Open");
                 break;
             case IDLE:
-                setContent("", "Start");
+                setContent("", "Pause");
+                break;
+            case PAUSED:
+                setContent("", "Resume");
                 break;
         }
     }
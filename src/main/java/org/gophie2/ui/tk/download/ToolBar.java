@@ -17,11 +17,14 @@
 package org.gophie2.ui.tk.download;
 
 import java.awt.BorderLayout;
+import java.awt.FlowLayout;
 import javax.swing.JPanel;
 import javax.swing.border.EmptyBorder;
 import org.gophie2.config.ColorPalette;
 import org.gophie2.config.ConfigurationManager;
+import org.gophie2.net.BandwidthLimiter;
 import org.gophie2.net.DownloadItem;
+import org.gophie2.net.DownloadStatus;
 import org.gophie2.ui.tk.buttons.ActionButtonEventListener;
 
 /**
@@ -33,11 +36,17 @@ public class ToolBar extends JPanel {
     private static final long serialVersionUID = 1011082521184124592L;
     private final ClearButton clearButton;
     private final MainButton mainButton;
+    private final PriorityButton priorityButton;
+    private final LimitButton limitButton;
+    private final LimitButton globalLimitButton;
 
     public ToolBar(ActionButtonEventListener listener) {
         super();
         clearButton = new ClearButton(listener);
         mainButton = new MainButton(listener);
+        priorityButton = new PriorityButton(listener);
+        limitButton = new LimitButton(listener, 3, "Speed");
+        globalLimitButton = new LimitButton(listener, 4, "All");
         init();
     }
 
@@ -46,22 +55,50 @@ public class ToolBar extends JPanel {
         setLayout(new BorderLayout());
         setBorder(new EmptyBorder(8, 16, 10, 16));
         setBackground(colors.getActionbarBackground());
-        add(clearButton, BorderLayout.EAST);
-        add(mainButton, BorderLayout.WEST);
+
+        /* the actions for all downloads */
+        JPanel listButtons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 16, 0));
+        listButtons.setOpaque(false);
+        listButtons.add(globalLimitButton);
+        listButtons.add(clearButton);
+        add(listButtons, BorderLayout.EAST);
+
+        /* the actions for the selected download */
+        JPanel itemButtons = new JPanel(new FlowLayout(FlowLayout.LEFT, 16, 0));
+        itemButtons.setOpaque(false);
+        itemButtons.add(mainButton);
+        itemButtons.add(priorityButton);
+        itemButtons.add(limitButton);
+        add(itemButtons, BorderLayout.WEST);
     }
 
-    protected void handleSelectionChange(DownloadItem selected, boolean hasNonActiveItems) {
+    protected void handleSelectionChange(DownloadItem selected, boolean hasFinishedItems) {
 
         if (selected == null) {
             mainButton.setVisible(false);
+            priorityButton.setVisible(false);
+            limitButton.setVisible(false);
         } else {
             mainButton.applyStatus(selected.getStatus());
 
             mainButton.setVisible(true);
             mainButton.setButtonEnabled(true);
+
+            /* only waiting downloads can be moved in the queue */
+            boolean waiting = selected.getStatus() == DownloadStatus.IDLE
+                    || selected.getStatus() == DownloadStatus.PAUSED;
+            priorityButton.applyPriority(selected.getPriority());
+            priorityButton.setVisible(waiting);
+            priorityButton.setButtonEnabled(waiting);
+
+            /* the speed of downloads that did not end can be limited */
+            boolean running = waiting || selected.getStatus() == DownloadStatus.ACTIVE;
+            limitButton.applyRate(selected.getRateLimit());
+            limitButton.setVisible(running);
         }
 
-        clearButton.setButtonEnabled(hasNonActiveItems);
+        globalLimitButton.applyRate(BandwidthLimiter.getDefault().getRate());
+        clearButton.setButtonEnabled(hasFinishedItems);
 
     }
 }
@@ -17,26 +17,46 @@
 package org.gophie2.ui.tk.history;
 
 import java.util.ArrayList;
+import java.util.List;
+import org.gophie2.config.ConfigFile;
+import org.gophie2.config.ConfigurationManager;
 import org.gophie2.net.GopherMenu;
 import org.gophie2.ui.MainWindow;
 import org.gophie2.ui.NavigationBar;
 
 /**
+ * The pages visited in this session. Pages next to the current one stay
+ * parsed, older ones are only kept as compressed source code and the
+ * oldest are moved to temporary files once the memory budget is used up.
  *
  * @author malyshev
  */
-public class History extends ArrayList<GopherMenu> {
+public class History extends ArrayList<HistoryEntry> {
 
     private static final long serialVersionUID = 5761909433840183093L;
+
+    /* default number of pages before and after the current
+        one that stay parsed */
+    private static final int DEFAULT_PARSED_PAGES = 3;
+
+    /* default memory for history pages in megabytes */
+    private static final int DEFAULT_HISTORY_MEMORY = 16;
+
     private int historyPosition;
     private final NavigationBar navigator;
     private final MainWindow parent;
+    private final int parsedPages;
+    private final long memoryBudget;
 
     public History(MainWindow parent, NavigationBar navigator) {
         super();
         this.parent = parent;
         this.navigator = navigator;
         historyPosition = -1;
+
+        ConfigFile configFile = ConfigurationManager.getConfigFile();
+        parsedPages = configFile.getInt("Navigation", "HISTORY_PARSED_PAGES", DEFAULT_PARSED_PAGES);
+        memoryBudget = (long) configFile.getInt("Navigation", "HISTORY_MEMORY", DEFAULT_HISTORY_MEMORY) * 1024 * 1024;
     }
 
     public void updateHistory(GopherMenu page) {
@@ -67,11 +87,17 @@ public class History extends ArrayList<GopherMenu> {
                     up until the current page and add this page as a new
                     branch to the history, eliminating the
                     previous branch forward */
-                ArrayList<GopherMenu> updatedHistory = new ArrayList<>();
+                ArrayList<HistoryEntry> updatedHistory = new ArrayList<>();
                 for (int h = 0; h <= historyPosition; h++) {
                     updatedHistory.add(get(h));
                 }
 
+                /* the pages of the previous branch are gone for good */
+                for (int h = historyPosition + 1; h < size(); h++) {
+                    get(h).discard();
+                    parent.historyPageReleased(get(h));
+                }
+
                 /* update the history */
                 clear();
                 addAll(updatedHistory);
@@ -88,7 +114,7 @@ public class History extends ArrayList<GopherMenu> {
         /* add to history, if allowed */
         if (addToHistory == true) {
             /* add to the stack of pages */
-            add(page);
+            add(new HistoryEntry(page));
 
             /* update position to the top */
             historyPosition = size() - 1;
@@ -111,9 +137,12 @@ public class History extends ArrayList<GopherMenu> {
                 navigator.setNavigateForward(true);
             }
         }
+
+        /* move pages to their tier for the new position */
+        retain();
     }
 
-    public GopherMenu current() {
+    public HistoryEntry current() {
         return get(historyPosition);
     }
 
@@ -121,12 +150,7 @@ public class History extends ArrayList<GopherMenu> {
         /* set the new history position */
         if (historyPosition > 0) {
             historyPosition--;
-
-            /* get the new page from history */
-            parent.loaded(get(historyPosition));
-
-            /* update the history */
-            updateHistory(get(historyPosition));
+            show(get(historyPosition));
         }
     }
 
@@ -134,12 +158,66 @@ public class History extends ArrayList<GopherMenu> {
         /* set the new history position */
         if (historyPosition < (size() - 1)) {
             historyPosition++;
+            show(get(historyPosition));
+        }
+    }
 
-            /* get the new page from history */
-            parent.loaded(get(historyPosition));
+    /**
+     * Displays the page of an entry, restoring it from its tier
+     *
+     * @param entry The entry to display
+     */
+    private void show(HistoryEntry entry) {
+        /* get the new page from history */
+        GopherMenu page = entry.getPage();
+        if (page == null) {
+            /* the stored page is lost, fetch it again */
+            parent.refreshRequested();
+            return;
+        }
+        parent.loaded(page, entry);
+
+        /* update the history */
+        updateHistory(page);
+    }
+
+    /**
+     * Keeps the pages next to the current one parsed, compresses
+     * all others and moves the compressed pages farthest away from
+     * the current one to disk while the memory budget is exceeded
+     */
+    private void retain() {
+        long memorySize = 0;
+        List<HistoryEntry> spillable = new ArrayList<>();
+        for (int h = 0; h < size(); h++) {
+            HistoryEntry entry = get(h);
+            if (Math.abs(h - historyPosition) > parsedPages && entry.isParsed()) {
+                entry.compress();
+
+                /* a kept rendering would pin the parsed page */
+                parent.historyPageReleased(entry);
+            }
+            memorySize += entry.getMemorySize();
+        }
+
+        /* collect the compressed pages, farthest first */
+        for (int distance = size(); distance > parsedPages; distance--) {
+            addCompressed(spillable, historyPosition - distance);
+            addCompressed(spillable, historyPosition + distance);
+        }
+
+        for (HistoryEntry entry : spillable) {
+            if (memorySize <= memoryBudget) {
+                break;
+            }
+            memorySize -= entry.getMemorySize();
+            entry.spill();
+        }
+    }
 
-            /* update the history */
-            updateHistory(get(historyPosition));
+    private void addCompressed(List<HistoryEntry> entryList, int position) {
+        if (position >= 0 && position < size() && get(position).isCompressed()) {
+            entryList.add(get(position));
         }
     }
 }
@@ -0,0 +1,207 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.ui.tk.history;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.gophie2.net.GopherMenu;
+import org.gophie2.net.GopherMenuItemType;
+import org.gophie2.net.GopherUrl;
+
+/**
+ * A page in the history. Depending on its tier the page is kept parsed,
+ * as compressed source code in memory or as compressed source code in a
+ * temporary file. The page is parsed again whenever it is needed.
+ */
+public class HistoryEntry {
+
+    private final GopherUrl url;
+    private final GopherMenuItemType contentType;
+
+    /* exactly one of these holds the page */
+    private GopherMenu page;
+    private byte[] compressed;
+    private File spillFile;
+
+    /**
+     * Constructs the entry for a page that was just displayed
+     *
+     * @param page The parsed page
+     */
+    public HistoryEntry(GopherMenu page) {
+        this.url = page.getUrl();
+        this.contentType = page.getContentType();
+        this.page = page;
+    }
+
+    /**
+     * Returns the url of the page
+     *
+     * @return The url of the page
+     */
+    public GopherUrl getUrl() {
+        return url;
+    }
+
+    /**
+     * Returns the content type of the page
+     *
+     * @return The content type of the page
+     */
+    public GopherMenuItemType getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Returns the page, parsing it again when it was compressed or
+     * spilled to disk
+     *
+     * @return The page or null when it could not be restored
+     */
+    public GopherMenu getPage() {
+        if (page != null) {
+            return page;
+        }
+
+        try {
+            byte[] data = compressed;
+            if (data == null && spillFile != null) {
+                data = Files.readAllBytes(spillFile.toPath());
+            }
+            if (data == null) {
+                return null;
+            }
+
+            page = new GopherMenu(decompress(data), contentType, url);
+            compressed = null;
+            deleteSpillFile();
+        } catch (IOException ex) {
+            System.out.println("Failed to restore page from history: " + ex.getMessage());
+        }
+        return page;
+    }
+
+    /**
+     * Returns whether the page is kept parsed
+     *
+     * @return true when the page is parsed
+     */
+    public boolean isParsed() {
+        return page != null;
+    }
+
+    /**
+     * Returns whether the page is kept compressed in memory
+     *
+     * @return true when the page is compressed in memory
+     */
+    public boolean isCompressed() {
+        return compressed != null;
+    }
+
+    /**
+     * Returns the estimated memory used by the entry
+     *
+     * @return The size in bytes
+     */
+    public long getMemorySize() {
+        if (page != null) {
+            return page.getMemorySize();
+        }
+        if (compressed != null) {
+            return compressed.length;
+        }
+        return 0;
+    }
+
+    /**
+     * Drops the parsed page and only keeps its compressed source code
+     */
+    public void compress() {
+        if (page == null) {
+            return;
+        }
+
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+                gzip.write(page.getByteArray());
+            }
+            compressed = output.toByteArray();
+            page = null;
+        } catch (IOException ex) {
+            /* keep the page parsed then */
+            System.out.println("Failed to compress history page: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Moves the compressed source code to a temporary file
+     */
+    public void spill() {
+        if (compressed == null) {
+            return;
+        }
+
+        try {
+            File file = File.createTempFile("gophiehistory", ".gz");
+            file.deleteOnExit();
+            Files.write(file.toPath(), compressed);
+            spillFile = file;
+            compressed = null;
+        } catch (IOException ex) {
+            /* keep the page in memory then */
+            System.out.println("Failed to write history page to disk: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Releases the temporary file of an entry removed from the history
+     */
+    public void discard() {
+        deleteSpillFile();
+    }
+
+    private void deleteSpillFile() {
+        if (spillFile != null) {
+            if (!spillFile.delete()) {
+                System.out.println("Failed to delete history file: " + spillFile.getName());
+            }
+            spillFile = null;
+        }
+    }
+
+    private static byte[] decompress(byte[] data) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 4);
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        }
+        return output.toByteArray();
+    }
+}
@@ -16,13 +16,18 @@
  */
 package org.gophie2.ui.tk.requesters;
 
-import org.gophie2.net.GopherTransport;
+import org.gophie2.net.CachingTransport;
+import org.gophie2.net.GopherMenu;
 import org.gophie2.net.GopherMenuItem;
 import org.gophie2.net.GopherMenuItemType;
 import org.gophie2.ui.MainWindow;
 import org.gophie2.ui.MessageDisplayer;
 import org.gophie2.ui.NavigationBar;
-import org.gophie2.net.Transport;
+import org.gophie2.ui.event.EdtEventDispatcher;
+import org.gophie2.net.PageCache;
+import org.gophie2.net.Prefetcher;
+import org.gophie2.net.TransportFactory;
+import org.gophie2.net.TransportRequest;
 
 /**
  *
@@ -30,19 +35,49 @@ import org.gophie2.net.Transport;
  */
 public class GopherRequester implements Requester {
 
-    private final Transport gopherClient;
+    private final CachingTransport gopherClient;
+    private final Prefetcher prefetcher;
+
+    /* dispatches the events of the current request to the window */
+    private EdtEventDispatcher dispatcher;
+
+    /* handle of the current request */
+    private TransportRequest<GopherMenu> request;
     private final MainWindow parent;
     private final NavigationBar navigation;
 
     public GopherRequester(MainWindow parent, NavigationBar navigationBar) {
         this.parent = parent;
         this.navigation = navigationBar;
-        gopherClient = new GopherTransport();
-
+        gopherClient = new CachingTransport(TransportFactory.create(), PageCache.INSTANCE, true);
+        prefetcher = new Prefetcher(PageCache.INSTANCE);
     }
 
     public void cancel() {
-        gopherClient.cancel();
+        if (request != null) {
+            request.cancel(true);
+        }
+        if (dispatcher != null) {
+            dispatcher.cancel();
+        }
+    }
+
+    /**
+     * Starts a speculative fetch of a link target the user hovers over
+     *
+     * @param addressText The url of the link target
+     *
+     * @param itemType The content type of the link target
+     */
+    public void prefetch(String addressText, GopherMenuItemType itemType) {
+        prefetcher.prefetch(addressText, itemType);
+    }
+
+    /**
+     * Abandons the speculative fetch of a link target
+     */
+    public void cancelPrefetch() {
+        prefetcher.cancel();
     }
 
     @Override
@@ -51,6 +86,22 @@ public class GopherRequester implements Requester {
     }
 
     public void request(MessageDisplayer messenger, String addressText, GopherMenuItemType itemType) {
+        request(messenger, addressText, itemType, false);
+    }
+
+    /**
+     * Requests a gopher page
+     *
+     * @param messenger The message displayer to report to
+     *
+     * @param addressText The url of the page
+     *
+     * @param itemType The expected content type of the page
+     *
+     * @param reload When true, the page is fetched from the server even if
+     * it is cached
+     */
+    public void request(MessageDisplayer messenger, String addressText, GopherMenuItemType itemType, boolean reload) {
         /* this is default gopher content */
  /* activate the load indicator in the address bar */
         navigation.setIsLoading(true);
@@ -60,7 +111,22 @@ public class GopherRequester implements Requester {
 
         try {
             /* try to execute the thread */
-            gopherClient.fetchAsync(addressText, itemType, parent);
+            /* an earlier request still loading is of no interest anymore */
+            cancel();
+            dispatcher = new EdtEventDispatcher(parent);
+
+            /* a prefetch of this page becomes the request, any other
+                prefetch ends, its result is used if ready */
+            TransportRequest<GopherMenu> prefetched = reload ? null : prefetcher.adopt(addressText, itemType, dispatcher);
+            prefetcher.cancel();
+            if (prefetched != null) {
+                request = prefetched;
+                return;
+            }
+            if (!reload) {
+                prefetcher.promote(addressText, itemType);
+            }
+            request = gopherClient.fetchAsync(addressText, itemType, dispatcher, reload);
         } catch (Exception ex) {
             /* might throw an ex when thread is interrupted */
             System.out.println("Exception while fetching async: " + ex.getMessage());
@@ -0,0 +1,79 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.ui.util;
+
+import java.io.IOException;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * Image input stream reading straight from a byte array. Unlike the memory
+ * cache streams of image io, the bytes are not copied into a cache first.
+ */
+final class ByteArrayImageInputStream extends ImageInputStreamImpl {
+
+    private final byte[] data;
+    private final int length;
+
+    /**
+     * Constructs the stream over the beginning of an array
+     *
+     * @param data The array with the bytes
+     *
+     * @param length Number of bytes at the beginning of the array to read
+     */
+    ByteArrayImageInputStream(byte[] data, int length) {
+        this.data = data;
+        this.length = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (streamPos >= length) {
+            return -1;
+        }
+        return data[(int) streamPos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        checkClosed();
+        if (offset < 0 || count < 0 || offset + count > buffer.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        bitOffset = 0;
+        if (count == 0) {
+            return 0;
+        }
+        if (streamPos >= length) {
+            return -1;
+        }
+
+        int available = (int) Math.min(count, length - streamPos);
+        System.arraycopy(data, (int) streamPos, buffer, offset, available);
+        streamPos += available;
+        return available;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.ui.util;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.gophie2.config.ConfigurationManager;
+import org.gophie2.net.GopherMenu;
+
+/**
+ * Memory bound least recently used cache for decoded images, keyed by the
+ * page holding the image data and the subsampling it was decoded with.
+ * Images are decoded straight from the bytes of the page, so the page view
+ * and the clipboard share a single decode.
+ */
+public class ImageCache {
+
+    /* default memory budget in megabytes */
+    private static final int DEFAULT_CACHE_SIZE = 64;
+
+    /* memory used per pixel of a decoded image */
+    private static final int BYTES_PER_PIXEL = 4;
+
+    public static final ImageCache INSTANCE = new ImageCache();
+
+    private final LinkedHashMap<Key, Entry> entries;
+    private final long maximumSize;
+    private long currentSize;
+
+    private ImageCache() {
+        this((long) ConfigurationManager.getConfigFile().getInt("Navigation", "IMAGE_CACHE_SIZE", DEFAULT_CACHE_SIZE) * 1024 * 1024);
+    }
+
+    /**
+     * Constructs an image cache
+     *
+     * @param maximumSize Memory budget of the cache in bytes
+     */
+    public ImageCache(long maximumSize) {
+        /* access order turns the map into a lru list */
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.maximumSize = maximumSize;
+        this.currentSize = 0;
+    }
+
+    /**
+     * Returns the decoded image of a page at full resolution, decoding it
+     * when it is not cached
+     *
+     * @param page The page with the image data
+     *
+     * @return The decoded image
+     *
+     * @throws IOException when the image cannot be decoded
+     */
+    public BufferedImage getImage(GopherMenu page) throws IOException {
+        return getImage(page, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the decoded image of a page, subsampled to at most twice
+     * the maximum width and decoded when it is not cached. Decoding may
+     * take a while, so call this outside the event dispatch thread where
+     * possible.
+     *
+     * @param page The page with the image data
+     *
+     * @param maximumWidth The maximum width the image is displayed with
+     *
+     * @return The decoded image
+     *
+     * @throws IOException when the image cannot be decoded
+     */
+    public BufferedImage getImage(GopherMenu page, int maximumWidth) throws IOException {
+        byte[] data = page.getByteArray();
+        int subsampling = ImageDecoder.getSubsampling(ImageDecoder.getWidth(data), maximumWidth);
+        Key key = new Key(page, subsampling);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                return entry.image;
+            }
+        }
+
+        BufferedImage image = ImageDecoder.decode(data, subsampling);
+        put(key, image);
+        return image;
+    }
+
+    /**
+     * Removes all cached images
+     */
+    public synchronized void clear() {
+        entries.clear();
+        currentSize = 0;
+    }
+
+    private synchronized void put(Key key, BufferedImage image) {
+        long size = (long) image.getWidth() * image.getHeight() * BYTES_PER_PIXEL;
+        if (size > maximumSize) {
+            /* never let one image flush the whole cache */
+            return;
+        }
+
+        Entry previous = entries.put(key, new Entry(image, size));
+        if (previous != null) {
+            currentSize -= previous.size;
+        }
+        currentSize += size;
+
+        /* evict the least recently used images */
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (currentSize > maximumSize && iterator.hasNext()) {
+            currentSize -= iterator.next().getValue().size;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * The page of an image and the subsampling it was decoded with
+     */
+    private static class Key {
+
+        private final GopherMenu page;
+        private final int subsampling;
+
+        Key(GopherMenu page, int subsampling) {
+            this.page = page;
+            this.subsampling = subsampling;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return page == key.page && subsampling == key.subsampling;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(page) * 31 + subsampling;
+        }
+    }
+
+    /**
+     * A cached image with its size
+     */
+    private static class Entry {
+
+        private final BufferedImage image;
+        private final long size;
+
+        Entry(BufferedImage image, long size) {
+            this.image = image;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.ui.util;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decodes images straight from memory. Large images are subsampled while
+ * they are decoded, so the raster at full resolution is never allocated
+ * when the image is displayed smaller anyway.
+ */
+public final class ImageDecoder {
+
+    private ImageDecoder() {
+    }
+
+    /**
+     * Returns the subsampling that decodes an image at least as wide as
+     * the maximum width, but not more than twice as wide
+     *
+     * @param width The width of the image
+     *
+     * @param maximumWidth The maximum width the image is displayed with
+     *
+     * @return The subsampling factor, 1 decodes every pixel
+     */
+    public static int getSubsampling(int width, int maximumWidth) {
+        return Math.max(1, width / Math.max(1, maximumWidth));
+    }
+
+    /**
+     * Returns the width of the image without decoding it
+     *
+     * @param data The encoded image
+     *
+     * @return The width of the image
+     *
+     * @throws IOException when the image format is not supported
+     */
+    public static int getWidth(byte[] data) throws IOException {
+        ImageInputStream input = createInput(data);
+        ImageReader reader = createReader(input);
+        try {
+            return reader.getWidth(0);
+        } finally {
+            reader.dispose();
+            input.close();
+        }
+    }
+
+    /**
+     * Decodes a complete image
+     *
+     * @param data The encoded image
+     *
+     * @param subsampling The subsampling factor in both directions
+     *
+     * @return The decoded image
+     *
+     * @throws IOException when the image cannot be decoded
+     */
+    public static BufferedImage decode(byte[] data, int subsampling) throws IOException {
+        ImageInputStream input = createInput(data);
+        ImageReader reader = createReader(input);
+        try {
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+            input.close();
+        }
+    }
+
+    /**
+     * Decodes a complete image subsampled to fit into a box, at most
+     * twice as large as the box in the direction that limits it
+     *
+     * @param data The encoded image
+     *
+     * @param maximumWidth The width of the box
+     *
+     * @param maximumHeight The height of the box
+     *
+     * @return The decoded image
+     *
+     * @throws IOException when the image cannot be decoded
+     */
+    public static BufferedImage decodeToFit(byte[] data, int maximumWidth, int maximumHeight) throws IOException {
+        ImageInputStream input = createInput(data);
+        ImageReader reader = createReader(input);
+        try {
+            int subsampling = Math.max(getSubsampling(reader.getWidth(0), maximumWidth),
+                    getSubsampling(reader.getHeight(0), maximumHeight));
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+            input.close();
+        }
+    }
+
+    /**
+     * Wraps the data into a stream that reads the array directly, image io
+     * would otherwise buffer the stream in a temporary file
+     */
+    private static ImageInputStream createInput(byte[] data) {
+        return new ByteArrayImageInputStream(data, data.length);
+    }
+
+    static ImageReader createReader(ImageInputStream input) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IOException("Unsupported image format");
+        }
+
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+    This file is part of Gophie.
+
+    Gophie is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gophie is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Gophie. If not, see <https://www.gnu.org/licenses/>.
+
+ */
+package org.gophie2.ui.util;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decodes an image while it is still being received. Image readers cannot
+ * continue where the data ended, so every call decodes from the first byte
+ * again, but the reader and the image the pixels are decoded into are kept
+ * between the calls. The decoder is not thread safe, all calls have to come
+ * from the same thread.
+ */
+public final class PartialImageDecoder {
+
+    private ImageReader reader = null;
+    private BufferedImage image = null;
+    private int subsampling = 1;
+
+    /**
+     * Decodes as much of the image as the data received so far contains.
+     * The rows decoded before the data ends are kept in the image.
+     *
+     * @param data Array starting with the encoded image, it is read
+     * directly and must not change while it is decoded
+     *
+     * @param length Number of bytes received so far
+     *
+     * @param maximumWidth The maximum width the image is displayed with
+     *
+     * @return The partially decoded image or null when the data does not
+     * contain any pixels yet
+     */
+    public BufferedImage decode(byte[] data, int length, int maximumWidth) {
+        ImageInputStream input = new ByteArrayImageInputStream(data, length);
+        try {
+            if (reader == null) {
+                reader = ImageDecoder.createReader(input);
+            } else {
+                reader.setInput(input, true, true);
+            }
+
+            if (image == null) {
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                Iterator<ImageTypeSpecifier> imageTypes = reader.getImageTypes(0);
+                if (!imageTypes.hasNext()) {
+                    return null;
+                }
+                subsampling = ImageDecoder.getSubsampling(width, maximumWidth);
+                image = imageTypes.next().createBufferedImage(
+                        (width + subsampling - 1) / subsampling, (height + subsampling - 1) / subsampling);
+            }
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            param.setDestination(image);
+            try {
+                reader.read(0, param);
+            } catch (IOException | RuntimeException ex) {
+                /* the data ended, the rows decoded so far are in the image */
+            }
+            return image;
+        } catch (IOException | RuntimeException ex) {
+            /* not even the header of the image was received */
+            return null;
+        } finally {
+            try {
+                input.close();
+            } catch (IOException ex) {
+                /* nothing to release for memory streams */
+            }
+        }
+    }
+
+    /**
+     * Releases the reader and the decoded image
+     */
+    public void dispose() {
+        if (reader != null) {
+            reader.dispose();
+            reader = null;
+        }
+        image = null;
+    }
+}